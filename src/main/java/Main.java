@@ -1,5 +1,4 @@
 import java.awt.BorderLayout;
-import java.util.ArrayList;
 import java.util.Arrays;
 
 import javax.swing.JFrame;
@@ -9,8 +8,11 @@ import jcheese.Board;
 import jcheese.FEN;
 import jcheese.Move;
 import jcheese.MoveGenerator;
+import jcheese.MoveList;
 import jcheese.Piece;
+import jcheese.ai.AlphaBetaController;
 import jcheese.ai.RandomController;
+import jcheese.ai.Search;
 import jcheese.client.CLI;
 import jcheese.server.Server;
 import jcheese.swing_ui.BoardPane;
@@ -29,6 +31,16 @@ public class Main {
     System.out.printf("Random seed = %d\n", random.seed);
   }
   
+  public static void engineGameTest() {
+    Server server = new Server();
+    
+    server.setLightControl(new AlphaBetaController(server.board).setTimeLimit(500));
+    server.setDarkControl(new RandomController());
+    server.addView(new CLI());
+    
+    server.launch();
+  }
+  
   public static void perftreeTest(String[] args) {
     int processed = 0;
     int depth = Integer.parseInt(args[processed++]);
@@ -60,7 +72,7 @@ public class Main {
     Board mainBoard = new Board();
     MoveGenerator gen = new MoveGenerator();
     FEN.loadFEN(mainBoard, Board.START_POS);
-    ArrayList<Integer> moves = new ArrayList<>();
+    MoveList moves = new MoveList();
     
     final int thePlayer = Piece.LIGHT;
     if (thePlayer != Piece.LIGHT) bp.setFlipped(true);
@@ -113,7 +125,7 @@ public class Main {
       Board board = new Board();
       FEN.loadFEN(board, Board.START_POS);
       MoveGenerator gen = new MoveGenerator();
-      ArrayList<Integer> moves = new ArrayList<>();
+      MoveList moves = new MoveList();
       
       int move;
       for(;;) {
@@ -130,6 +142,53 @@ public class Main {
       
   }
   
+  // The positions and keys published with the Polyglot book format
+  public static boolean polyglotKeyTest() {
+    Object[][] cases = {
+      { Board.START_POS, 0x463B96181691FC9CL },
+      { "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", 0x823C9B50FD114196L },
+      { "rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2", 0x0756B94461C50FB0L },
+      { "rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2", 0x662FAFB965DB29D4L },
+      { "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3", 0x22A48B5A8E47FF78L },
+      { "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 3", 0x652A607CA3F242C1L },
+      { "rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4", 0x00FDD303C946BDD9L },
+      { "rnbqkbnr/p1pppppp/8/8/PpP4P/8/1P1PPPP1/RNBQKBNR b KQkq c3 0 3", 0x3C8123EA7B067637L },
+      { "rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4", 0x5C3F9B829B279560L },
+    };
+    
+    boolean passed = true;
+    Board board = new Board();
+    for (final Object[] test : cases) {
+      FEN.loadFEN(board, (String) test[0]);
+      long expected = (Long) test[1];
+      boolean ok = board.getZobrist() == expected;
+      passed &= ok;
+      System.out.printf("%s %016x expected %016x  %s\n", ok ? "OK  " : "FAIL", board.getZobrist(), expected, test[0]);
+    }
+    return passed;
+  }
+  
+  public static void pruningTest(int depth) {
+    String[] fens = {
+      Board.START_POS,
+      "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+      "r2q1rk1/pp2bppp/2n1pn2/3p4/3P4/2NBPN2/PP3PPP/R2Q1RK1 w - - 0 10",
+      "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+    Board[] positions = new Board[fens.length];
+    for (int i = 0; i < fens.length; ++i) {
+      positions[i] = new Board();
+      FEN.loadFEN(positions[i], fens[i]);
+    }
+    
+    long[] saved = Search.measureSavings(positions, depth, 16);
+    System.out.printf("Nodes saved at depth %d\n", depth);
+    System.out.printf("  null move: %d\n", saved[Search.NULL_MOVE]);
+    System.out.printf("  late move reductions: %d\n", saved[Search.LATE_MOVE_REDUCTIONS]);
+    System.out.printf("  reverse futility: %d\n", saved[Search.REVERSE_FUTILITY]);
+    System.out.printf("  futility: %d\n", saved[Search.FUTILITY]);
+  }
+  
   public static void main(String[] args) throws InterruptedException {
     swingUITest();
   }
@@ -42,6 +42,15 @@ public class Board {
   public static final int CASTLE_COUNT = 4;
 
   private long zkey = 0L;
+  /* [Design Note]
+   * Two more keys follow the pieces, both updated in [putPiece] and [removePiece]:
+   * [pawnKey] is the Zobrist key of the pawns alone, to probe pawn structure caches
+   * [materialKey] packs the number of pieces of each kind and side, 4 bits each at
+   *  ... [materialShift(piece)]. It is exact, so it can index material tables as well
+   * Making and unmaking moves keeps both in step, so the undo stack does not hold them
+   */
+  private long pawnKey = 0L;
+  private long materialKey = 0L;
   public final long[] bitboards = new long[BOARD_COUNT];
   public final int[] pieceBoard = new int[Square.COUNT];
   private int plySide = Piece.LIGHT;
@@ -49,11 +58,32 @@ public class Board {
   private int epSquare = Square.NIL;
   private int halfMoveClock;
   private int fullMoveNumber;
+  /* [Design Note]
+   * The undo stack holds what [applyMove] cannot deduce back from the move itself
+   * Every applied move pushes one entry, [unmakeMove] pops it
+   * An entry is the Zobrist key in [undoKeys] and the packed state in [undoStates]:
+   *   b[0:3] -> captured piece [Piece.NONE if nothing is captured]
+   *   b[4:7] -> castle rights [bit i is set if castles[i] is enabled]
+   *   b[8:14] -> en passant square [Square.NIL if none]
+   *   b[15:31] -> half move clock
+   * [undoKeys] doubles as the key history of the game for repetition detection. The key of the
+   *  ... position [n] plies back is [undoKeys[undoCount - n]]
+   */
+  private static final int UNDO_CAPACITY = 256;
+  private static final int UNDO_CASTLE_SHIFT = 4;
+  private static final int UNDO_EP_SHIFT = 8;
+  private static final int UNDO_HMOVE_SHIFT = 15;
+  private long[] undoKeys = new long[UNDO_CAPACITY];
+  private int[] undoStates = new int[UNDO_CAPACITY];
+  private int undoCount;
 
   public Board() { reset(); }
 
   public void reset() {
-    zkey = 0L;
+    // Polyglot hashes the turn when light is to move
+    zkey = Zobrist.sideKey;
+    pawnKey = 0L;
+    materialKey = 0L;
     Arrays.fill(bitboards, BitBoard.allClear());
     Arrays.fill(pieceBoard, Piece.NONE);
     plySide = Piece.LIGHT;
@@ -61,9 +91,18 @@ public class Board {
     epSquare = Square.NIL;
     halfMoveClock = 0;
     fullMoveNumber = 1;
+    undoCount = 0;
   }
 
   public long getZobrist() { return zkey; }
+  public long getPawnKey() { return pawnKey; }
+  public long getMaterialKey() { return materialKey; }
+
+  public static int materialShift(int piece) { return 4 * (piece - Piece.PAWN); }
+  // The number of [piece] counted in [materialKey]
+  public static int materialCount(long materialKey, int piece) {
+    return (int) (materialKey >>> materialShift(piece)) & 0xF;
+  }
 
   public int getPiece(int square) {
     return pieceBoard[square];
@@ -82,7 +121,10 @@ public class Board {
     allIndex = ALL | side;
     bitboards[boardIndex] = BitBoard.set(bitboards[boardIndex], square);
     bitboards[allIndex] = BitBoard.set(bitboards[allIndex], square);
-    zkey ^= Zobrist.pieceKeys[square][side][Piece.kindIndex(kind)];
+    long key = Zobrist.pieceKeys[square][side][Piece.kindIndex(kind)];
+    zkey ^= key;
+    if (kind == Piece.PAWN) pawnKey ^= key;
+    materialKey += 1L << materialShift(boardIndex);
   }
   public int removePiece(int square) {
     int piece, side, kind, boardIndex, allIndex;
@@ -96,7 +138,10 @@ public class Board {
     allIndex = ALL | side;
     bitboards[boardIndex] = BitBoard.clear(bitboards[boardIndex], square);
     bitboards[allIndex] = BitBoard.clear(bitboards[allIndex], square);
-    zkey ^= Zobrist.pieceKeys[square][side][Piece.kindIndex(kind)];
+    long key = Zobrist.pieceKeys[square][side][Piece.kindIndex(kind)];
+    zkey ^= key;
+    if (kind == Piece.PAWN) pawnKey ^= key;
+    materialKey -= 1L << materialShift(boardIndex);
     return piece;
   }
   public void movePiece(int srcSquare, int dstSquare) { putPiece(dstSquare, removePiece(srcSquare)); }
@@ -133,14 +178,21 @@ public class Board {
     assert square != Square.NIL;
     if (epSquare != Square.NIL) clearEpSquare();
     epSquare = square;
-    zkey ^= Zobrist.getEpKey(square);
+    zkey ^= epKey(square);
   }
   public void clearEpSquare() {
     if (epSquare != Square.NIL) {
-      zkey ^= Zobrist.getEpKey(epSquare);
+      zkey ^= epKey(epSquare);
       epSquare = Square.NIL;
     }
   }
+  // Only hashed if a pawn stands ready to capture, as in Polyglot. The pieces must not have moved
+  //  ... between setting the square and clearing it
+  private long epKey(int square) {
+    int pushedSide = Square.getY(square) == 2 ? Piece.LIGHT : Piece.DARK;
+    long capturers = MoveData.pawnCaptures[square][pushedSide] & bitboards[PAWNS | Piece.invertSide(pushedSide)];
+    return BitBoard.notEmpty(capturers) ? Zobrist.getEpKey(square) : 0L;
+  }
 
   public int getHalfMoveClock() { return halfMoveClock; }
   public void setHalfMoveClock(int hmove) { halfMoveClock = hmove; }
@@ -149,6 +201,8 @@ public class Board {
 
   public Board copyFrom(Board src) {
     zkey = src.zkey;
+    pawnKey = src.pawnKey;
+    materialKey = src.materialKey;
     System.arraycopy(src.bitboards, 0, bitboards, 0, bitboards.length);
     System.arraycopy(src.pieceBoard, 0, pieceBoard, 0, pieceBoard.length);
     plySide = src.plySide;
@@ -156,13 +210,60 @@ public class Board {
     epSquare = src.epSquare;
     halfMoveClock = src.halfMoveClock;
     fullMoveNumber = src.fullMoveNumber;
+    if (undoKeys.length < src.undoCount) {
+      undoKeys = new long[src.undoKeys.length];
+      undoStates = new int[src.undoStates.length];
+    }
+    System.arraycopy(src.undoKeys, 0, undoKeys, 0, src.undoCount);
+    System.arraycopy(src.undoStates, 0, undoStates, 0, src.undoCount);
+    undoCount = src.undoCount;
     return this;
   }
   public Board copy() {
     return new Board().copyFrom(this);
   }
 
+  private void pushUndo(int captured) {
+    if (undoCount == undoKeys.length) {
+      undoKeys = Arrays.copyOf(undoKeys, undoCount * 2);
+      undoStates = Arrays.copyOf(undoStates, undoCount * 2);
+    }
+    int castleBits = 0;
+    for (int castle = 0; castle < CASTLE_COUNT; ++castle) {
+      if (castles[castle]) castleBits |= 1 << castle;
+    }
+    undoKeys[undoCount] = zkey;
+    undoStates[undoCount] = captured
+      | (castleBits << UNDO_CASTLE_SHIFT)
+      | (epSquare << UNDO_EP_SHIFT)
+      | (halfMoveClock << UNDO_HMOVE_SHIFT);
+    ++undoCount;
+  }
+
+  // The number of moves that can be taken back with [unmakeMove]
+  public int getUndoCount() { return undoCount; }
+
+  // How many times the current position occurred before. Only positions with the same side to
+  //  ... move and no irreversible move since (the half move clock) can be the same
+  public int getRepetitionCount() {
+    int count = 0;
+    int limit = Math.min(halfMoveClock, undoCount);
+    for (int back = 2; back <= limit; back += 2) {
+      if (undoKeys[undoCount - back] == zkey) ++count;
+    }
+    return count;
+  }
+  // Same as [getRepetitionCount] > 0, but stops at the first repetition
+  public boolean isRepetition() {
+    int limit = Math.min(halfMoveClock, undoCount);
+    for (int back = 2; back <= limit; back += 2) {
+      if (undoKeys[undoCount - back] == zkey) return true;
+    }
+    return false;
+  }
+
   public void applyMove(int move) {
+    pushUndo(Move.isCapture(move) ? pieceBoard[Move.getDst(move)] : Piece.NONE);
     clearEpSquare();
 
     if (Move.isCastle(move)) {
@@ -222,6 +323,66 @@ public class Board {
     ++halfMoveClock;
   }
 
+  // Takes back [move], which must be the last move applied to this board
+  public void unmakeMove(int move) {
+    assert undoCount > 0; // Nothing to take back
+    int state = undoStates[--undoCount];
+
+    plySide = Piece.invertSide(plySide);
+    // Swapping back from LIGHT. The full turn is undone.
+    if (plySide == Piece.DARK) --fullMoveNumber;
+
+    if (Move.isCastle(move)) {
+      int castle = Move.getCastle(move);
+      movePiece(MoveData.kingDstSquares[castle], MoveData.kingSrcSquares[castle]);
+      movePiece(MoveData.rookDstSquares[castle], MoveData.rookSrcSquares[castle]);
+    } else {
+      int src = Move.getSrc(move),
+          dst = Move.getDst(move);
+
+      if (Move.isPromote(move)) {
+        removePiece(dst);
+        putPiece(dst, plySide | Piece.PAWN);
+      }
+      movePiece(dst, src);
+
+      if (Move.isCapture(move)) {
+        putPiece(dst, state & 0xF);
+      } else if (Move.isEnPassant(move)) {
+        putPiece(Move.getOtherSquare(move), Piece.invertSide(plySide) | Piece.PAWN);
+      }
+    }
+
+    for (int castle = 0; castle < CASTLE_COUNT; ++castle) {
+      castles[castle] = (state & (1 << (castle + UNDO_CASTLE_SHIFT))) != 0;
+    }
+    epSquare = (state >> UNDO_EP_SHIFT) & 0x7F;
+    halfMoveClock = state >>> UNDO_HMOVE_SHIFT;
+    // Restoring the key at once cancels out every incremental update above
+    zkey = undoKeys[undoCount];
+  }
+
+  // Passes the turn without moving, for null move pruning. The side to move must not be checked
+  public void makeNullMove() {
+    pushUndo(Piece.NONE);
+    clearEpSquare();
+    swapPlySide();
+    if (plySide == Piece.LIGHT) ++fullMoveNumber;
+    // Irreversible as far as repetitions go. A position is not repeated by passing
+    halfMoveClock = 0;
+  }
+
+  // Takes back [makeNullMove], which must be the last move applied to this board
+  public void unmakeNullMove() {
+    assert undoCount > 0; // Nothing to take back
+    int state = undoStates[--undoCount];
+    plySide = Piece.invertSide(plySide);
+    if (plySide == Piece.DARK) --fullMoveNumber;
+    epSquare = (state >> UNDO_EP_SHIFT) & 0x7F;
+    halfMoveClock = state >>> UNDO_HMOVE_SHIFT;
+    zkey = undoKeys[undoCount];
+  }
+
   public long[] getBoards() { return bitboards; }
   
   public boolean isValid() {
@@ -257,7 +418,8 @@ public class Board {
     
     if (halfMoveClock != 0 && epSquare != Square.NIL) return false; // Recent pawn push. Half move clock must be zero
     
-    // FIXME: Assert that opponent king should not be checked
+    // The side not to move cannot be in check
+    if (MoveGenerator.isKingAttacked(this, Piece.invertSide(plySide))) return false;
     
     return true;
   }
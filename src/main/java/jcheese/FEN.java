@@ -141,7 +141,7 @@ public class FEN {
     if (!atEnd()) {
       expect(' ', "Expect space after castle.");
       int sq = nextSquare();
-      if (sq != Square.NIL) temp.setEpSquare(nextSquare());
+      if (sq != Square.NIL) temp.setEpSquare(sq);
     }
 
     // Make half move clock indication optional. Defaults to 0.
@@ -64,13 +64,24 @@ public class Move {
     return push(MoveData.kingSrcSquares[castle], MoveData.kingDstSquares[castle]) | CASTLE_BIT | (castle << OTHER_SHIFT);
   }
 
+  private static boolean matches(int move, int srcSquare, int dstSquare, int promoteKind) {
+    if (Move.getSrc(move) == srcSquare && Move.getDst(move) == dstSquare) {
+      return !Move.isPromote(move) || Move.getPromoteKind(move) == promoteKind;
+    }
+    return false;
+  }
+
   public static int findMove(ArrayList<Integer> moves, int srcSquare, int dstSquare, int promoteKind) {
     for (final int move : moves) {
-      if (Move.getSrc(move) == srcSquare && Move.getDst(move) == dstSquare) {
-        if (Move.isPromote(move)) {
-          if (Move.getPromoteKind(move) == promoteKind) return move;
-        } else return move;
-      }
+      if (matches(move, srcSquare, dstSquare, promoteKind)) return move;
+    }
+    // This is error state. A move cannot be chosen from [moves], you do not want this
+    return ERROR_BIT;
+  }
+  public static int findMove(MoveList moves, int srcSquare, int dstSquare, int promoteKind) {
+    for (int i = 0; i < moves.size(); ++i) {
+      int move = moves.get(i);
+      if (matches(move, srcSquare, dstSquare, promoteKind)) return move;
     }
     // This is error state. A move cannot be chosen from [moves], you do not want this
     return ERROR_BIT;
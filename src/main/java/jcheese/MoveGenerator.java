@@ -3,15 +3,8 @@ package jcheese;
 import java.util.*;
 import jcheese.util.BitBoard;
 import jcheese.util.FEN;
+import jcheese.util.Magic;
 import jcheese.util.MoveData;
-import jcheese.util.MoveData.IScanner;
-
-import static jcheese.util.MoveData.EAST;
-import static jcheese.util.MoveData.WEST;
-import static jcheese.util.MoveData.NORTHEAST;
-import static jcheese.util.MoveData.SOUTHEAST;
-import static jcheese.util.MoveData.SOUTHWEST;
-import static jcheese.util.MoveData.NORTHWEST;
 
 public class MoveGenerator {
   // Board cache
@@ -34,10 +27,19 @@ public class MoveGenerator {
   private long checkers;
   private long checkPaths;
   private long[] pins = new long[Square.COUNT];
-  private ArrayList<Integer> moves;
+  private long pushMask;
+  private long captureMask;
+  private MoveList moves;
+  private final MoveList scratchMoves = new MoveList();
+  // Counting mode. The emitters add to [moveCount] instead of encoding moves into [moves]
+  private boolean countOnly;
+  private int moveCount;
+  // Generation stages. Captures include en passant and every promotion, quiets are the rest
+  private boolean genCaptures = true;
+  private boolean genQuiets = true;
   
   // Initialization phase
-  private void init(Board board, ArrayList<Integer> moves) {
+  private void init(Board board, MoveList moves) {
     activeSide = board.getPlySide();
     bitboards = board.getBoards();
     castles = board.getCastles();
@@ -101,42 +103,39 @@ public class MoveGenerator {
     addAttacks(inactiveKingSquare, kingAttacks);
   }
   
-  private void attacksBySlider(int boardIndex, int dirStart, int dirEnd) {
+  private static long sliderAttacks(int boardIndex, int theSquare, long occupancy) {
+    switch (boardIndex) {
+      case Board.ROOKS: return Magic.rookAttacks(theSquare, occupancy);
+      case Board.BISHOPS: return Magic.bishopAttacks(theSquare, occupancy);
+      case Board.QUEENS: return Magic.queenAttacks(theSquare, occupancy);
+      default: throw new AssertionError("Unreachable");
+    }
+  }
+  
+  private void attacksBySlider(int boardIndex) {
+    // The active king does not block. The squares behind it along the ray are still attacked
+    long xrayOccupancy = generalOccupancy & ~activeKingBit;
+    long activeOccupancy = bitboards[Board.ALL | activeSide];
+    
     for (long thePieces = bitboards[boardIndex | inactiveSide];
          BitBoard.notEmpty(thePieces); thePieces = BitBoard.popLSB(thePieces)) {
       int theSquare = BitBoard.bitScanForward(thePieces);
-      long[] rays = MoveData.sliders[theSquare];
-      long extent = BitBoard.allClear();
+      long extent = sliderAttacks(boardIndex, theSquare, xrayOccupancy);
       
-      for (int dir = dirStart; dir < dirEnd; ++dir) {
-        long ray = rays[dir];
-        IScanner scanner = MoveData.scanners[dir];
+      // Check if the active king lies along one of the rays of the slider
+      if (BitBoard.notEmpty(sliderAttacks(boardIndex, theSquare, BitBoard.allClear()) & activeKingBit)) {
+        long path = Magic.betweens[theSquare][activeKingSquare];
+        long blockers = path & generalOccupancy;
         
-        // Check for blockers
-        long blockers = ray & generalOccupancy;
-        if (BitBoard.notEmpty(blockers)) {
-          int hitSquare = scanner.run(blockers);
-          long hitBit = BitBoard.bit(hitSquare);
-          long shadow = MoveData.sliders[hitSquare][dir];
-          // Check if an active piece is hit
-          if (BitBoard.notEmpty(hitBit & bitboards[Board.ALL | activeSide])) {
-            if (hitSquare == activeKingSquare) {
-              checkPaths |= ray & ~shadow;
-            } else {
-              // A potential pinned piece
-              if (BitBoard.notEmpty(MoveData.extractors[dir].run(shadow & generalOccupancy) & activeKingBit)) {
-                // The active piece at [hitSquare] was protecting the active king from a check. Pin the piece
-                assert BitBoard.isEmpty(~pins[hitSquare]); // Cannot pin the piece twice
-                pins[hitSquare] = ray | BitBoard.bit(theSquare);
-              }
-              ray &= ~shadow; // Apply the shadow. The caster is an active non-king piece
-            }
-          } else {
-            ray &= ~shadow; // Apply the shadow. The caster is an inactive piece
-          }
-        } // If [ray] hit a piece
-        extent |= ray;
-      } // For each direction
+        if (BitBoard.isEmpty(blockers)) {
+          checkPaths |= path;
+        } else if (BitBoard.isEmpty(BitBoard.popLSB(blockers)) && BitBoard.notEmpty(blockers & activeOccupancy)) {
+          // The lone active piece at [pinnedSquare] was protecting the active king from a check. Pin the piece
+          int pinnedSquare = BitBoard.bitScanForward(blockers);
+          assert BitBoard.isEmpty(~pins[pinnedSquare]); // Cannot pin the piece twice
+          pins[pinnedSquare] = path | BitBoard.bit(theSquare);
+        }
+      }
       
       addAttacks(theSquare, extent);
     } // For each piece in [thePieces]
@@ -144,10 +143,10 @@ public class MoveGenerator {
   
   private void getAllAttacks() {
     attacksByPawn();
-    attacksBySlider(Board.ROOKS, MoveData.CARDINAL, MoveData.DIAGONAL);
+    attacksBySlider(Board.ROOKS);
     attacksByKnight();
-    attacksBySlider(Board.BISHOPS, MoveData.DIAGONAL, MoveData.DIRECTION_COUNT);
-    attacksBySlider(Board.QUEENS, MoveData.CARDINAL, MoveData.DIRECTION_COUNT);
+    attacksBySlider(Board.BISHOPS);
+    attacksBySlider(Board.QUEENS);
     attacksByKing();
   }
   
@@ -167,20 +166,30 @@ public class MoveGenerator {
    *    as the pin information only applies to a specific piece and is calculated for each square
    * Generating king moves are different altogether. The subroutine only needs the attacked squares
    *  ... in calculating moves. The king cannot possibly push to or capture squares that are attacked by the opposition
+   * In counting mode, the emitters tally the moves straight from the masks with popcounts
+   * [genCaptures] and [genQuiets] select the stages to emit. A skipped stage skips its emission loops
    */
   
-  private void emit(int move) { moves.add(move); }
-  private void emit(int... moves) {
-    for (final int move : moves) emit(move);
+  private void emit(int move) {
+    if (countOnly) ++moveCount;
+    else moves.add(move);
   }
   
   private void emitPush(int theSquare, long pushes) {
+    if (countOnly) {
+      moveCount += BitBoard.popCount(pushes);
+      return;
+    }
     for (; BitBoard.notEmpty(pushes); pushes = BitBoard.popLSB(pushes)) {
       emit(Move.push(theSquare, BitBoard.bitScanForward(pushes)));
     }
   }
   
   private void emitCapture(int theSquare, long captures) {
+    if (countOnly) {
+      moveCount += BitBoard.popCount(captures);
+      return;
+    }
     for (; BitBoard.notEmpty(captures); captures = BitBoard.popLSB(captures)) {
       emit(Move.capture(theSquare, BitBoard.bitScanForward(captures)));
     }
@@ -189,13 +198,17 @@ public class MoveGenerator {
   private void emitPawnPush(int theSquare, long pushBit, int promoteRank) {
     if (BitBoard.notEmpty(pushBit)) {
       int pushSquare = BitBoard.bitScanForward(pushBit);
+      // Promotions belong to the captures stage
+      if (!(Square.getY(pushSquare) == promoteRank ? genCaptures : genQuiets)) return;
+      if (countOnly) {
+        moveCount += Square.getY(pushSquare) == promoteRank ? 4 : 1;
+        return;
+      }
       if (Square.getY(pushSquare) == promoteRank) {
-        emit(
-          Move.promotePush(theSquare, pushSquare, Piece.ROOK),
-          Move.promotePush(theSquare, pushSquare, Piece.KNIGHT),
-          Move.promotePush(theSquare, pushSquare, Piece.BISHOP),
-          Move.promotePush(theSquare, pushSquare, Piece.QUEEN)
-        );
+        emit(Move.promotePush(theSquare, pushSquare, Piece.ROOK));
+        emit(Move.promotePush(theSquare, pushSquare, Piece.KNIGHT));
+        emit(Move.promotePush(theSquare, pushSquare, Piece.BISHOP));
+        emit(Move.promotePush(theSquare, pushSquare, Piece.QUEEN));
       } else {
         emit(Move.push(theSquare, pushSquare));
       }
@@ -203,15 +216,20 @@ public class MoveGenerator {
   }
   
   private void emitPawnCapture(int theSquare, long captureBits, int promoteRank) {
+    if (!genCaptures) return;
+    if (countOnly) {
+      // Each capture into the promotion rank is four moves, one for each promotion kind
+      long promoteBits = captureBits & MoveData.ranks[promoteRank];
+      moveCount += 4 * BitBoard.popCount(promoteBits) + BitBoard.popCount(captureBits & ~promoteBits);
+      return;
+    }
     for (; BitBoard.notEmpty(captureBits); captureBits = BitBoard.popLSB(captureBits)) {
       int captureSquare = BitBoard.bitScanForward(captureBits);
       if (Square.getY(captureSquare) == promoteRank) {
-        emit(
-          Move.promoteCapture(theSquare, captureSquare, Piece.ROOK),
-          Move.promoteCapture(theSquare, captureSquare, Piece.KNIGHT),
-          Move.promoteCapture(theSquare, captureSquare, Piece.BISHOP),
-          Move.promoteCapture(theSquare, captureSquare, Piece.QUEEN)
-        );
+        emit(Move.promoteCapture(theSquare, captureSquare, Piece.ROOK));
+        emit(Move.promoteCapture(theSquare, captureSquare, Piece.KNIGHT));
+        emit(Move.promoteCapture(theSquare, captureSquare, Piece.BISHOP));
+        emit(Move.promoteCapture(theSquare, captureSquare, Piece.QUEEN));
       } else {
         emit(Move.capture(theSquare, captureSquare));
       }
@@ -234,7 +252,7 @@ public class MoveGenerator {
         emitPawnPush(pawnSquare, pushBit & legalPushes, 7);
         // Check if nothing blocks the first push and destination is a valid double push and the double push is legal
         pushBit = ((pushBit & unoccupied) << 8) & legalPushes & MoveData.doublePushes[Piece.LIGHT];
-        if (BitBoard.notEmpty(pushBit)) {
+        if (genQuiets && BitBoard.notEmpty(pushBit)) {
           emit(Move.doublePush(pawnSquare, pawnSquare + 16, pawnSquare + 8));
         }
         emitPawnCapture(pawnSquare, pawnCaptures & legalCaptures, 7);
@@ -243,14 +261,14 @@ public class MoveGenerator {
         emitPawnPush(pawnSquare, pushBit & legalPushes, 0);
         // Check if nothing blocks the first push and destination is a valid double push and the double push is legal
         pushBit = ((pushBit & unoccupied) >> 8) & legalPushes & MoveData.doublePushes[Piece.DARK];
-        if (BitBoard.notEmpty(pushBit)) {
+        if (genQuiets && BitBoard.notEmpty(pushBit)) {
           emit(Move.doublePush(pawnSquare, pawnSquare - 16, pawnSquare - 8));
         }
         emitPawnCapture(pawnSquare, pawnCaptures & legalCaptures, 0);
       }
       // Generate en passant
       // Skip en passant generation if [epBit] is not within [pawnCaptures]
-      if (BitBoard.isEmpty(pawnCaptures & epBit)) continue;
+      if (!genCaptures || BitBoard.isEmpty(pawnCaptures & epBit)) continue;
       // Calculate the push and capture of the en passant move
       long epPushBit = epBit & legalPushes;
       long epCaptureBit;
@@ -267,15 +285,9 @@ public class MoveGenerator {
       // Get all the possible checkers
       long cardinalCheckers = bitboards[Board.ROOKS | inactiveSide] | bitboards[Board.QUEENS | inactiveSide];
       long diagonalCheckers = bitboards[Board.BISHOPS | inactiveSide] | bitboards[Board.QUEENS | inactiveSide];
-      long[] rays = MoveData.sliders[activeKingSquare];
-      // Probe for [cardinalCheckers] from the East or West and for [diagonalCheckers] everywhere
-      // The pin masks handle restricting discovered checks and some keep the king protected from a vertical slider anyways
-      if (BitBoard.notEmpty(MoveData.extractors[EAST].run(rays[EAST] & workingBoard) & cardinalCheckers)
-          || BitBoard.notEmpty(MoveData.extractors[WEST].run(rays[WEST] & workingBoard) & cardinalCheckers)
-          || BitBoard.notEmpty(MoveData.extractors[NORTHEAST].run(rays[NORTHEAST] & workingBoard) & diagonalCheckers)
-          || BitBoard.notEmpty(MoveData.extractors[SOUTHEAST].run(rays[SOUTHEAST] & workingBoard) & diagonalCheckers)
-          || BitBoard.notEmpty(MoveData.extractors[SOUTHWEST].run(rays[SOUTHWEST] & workingBoard) & diagonalCheckers)
-          || BitBoard.notEmpty(MoveData.extractors[NORTHWEST].run(rays[NORTHWEST] & workingBoard) & diagonalCheckers)
+      // Probe for any slider that sees the active king through [workingBoard]
+      if (BitBoard.notEmpty(Magic.rookAttacks(activeKingSquare, workingBoard) & cardinalCheckers)
+          || BitBoard.notEmpty(Magic.bishopAttacks(activeKingSquare, workingBoard) & diagonalCheckers)
       ) continue; // King can be checked. Skip en passant generation
       
       emit(Move.enPassant(pawnSquare, epSquare, epSquare + (activeSide == Piece.LIGHT ? -8 : +8)));
@@ -287,16 +299,17 @@ public class MoveGenerator {
          BitBoard.notEmpty(knights); knights = BitBoard.popLSB(knights)) {
       int knightSquare = BitBoard.bitScanForward(knights);
       long knightMoves = MoveData.knightMoves[knightSquare] & pins[knightSquare];
-      emitPush(knightSquare, knightMoves & pushMask);
-      emitCapture(knightSquare, knightMoves & captureMask);
+      if (genQuiets) emitPush(knightSquare, knightMoves & pushMask);
+      if (genCaptures) emitCapture(knightSquare, knightMoves & captureMask);
     }
   }
   
   private void movesByKing() {
     long kingMoves = MoveData.kingMoves[activeKingSquare] & ~attacksToActive;
     
+    if (genCaptures) emitCapture(activeKingSquare, kingMoves & inactiveOccupancy);
+    if (!genQuiets) return;
     emitPush(activeKingSquare, kingMoves & unoccupied);
-    emitCapture(activeKingSquare, kingMoves & inactiveOccupancy);
     
     // King cannot castle when in check
     if (BitBoard.notEmpty(checkers)) return;
@@ -311,39 +324,24 @@ public class MoveGenerator {
     }
   }
   
-  private void movesBySlider(int boardIndex, int dirStart, int dirEnd, long pushMask, long captureMask) {
+  private void movesBySlider(int boardIndex, long pushMask, long captureMask) {
     for (long theSliders = bitboards[boardIndex | activeSide];
          BitBoard.notEmpty(theSliders); theSliders = BitBoard.popLSB(theSliders)) {
       int theSquare = BitBoard.bitScanForward(theSliders);
       // Calculate the legal moves
       long legalPushes = pins[theSquare] & pushMask;
       long legalCaptures = pins[theSquare] & captureMask;
-      long[] rays = MoveData.sliders[theSquare];
-      long extent = BitBoard.allClear();
+      long extent = sliderAttacks(boardIndex, theSquare, generalOccupancy);
       
-      for (int dir = dirStart; dir < dirEnd; ++dir) {
-        IScanner scanner = MoveData.scanners[dir];
-        long ray = rays[dir];
-        long blockers = ray & generalOccupancy;
-        
-        if (BitBoard.notEmpty(blockers)) {
-          ray &= ~MoveData.sliders[scanner.run(blockers)][dir];
-        }
-        
-        extent |= ray;
-      }
-      
-      emitPush(theSquare, extent & legalPushes);
-      emitCapture(theSquare, extent & legalCaptures);
+      if (genQuiets) emitPush(theSquare, extent & legalPushes);
+      if (genCaptures) emitCapture(theSquare, extent & legalCaptures);
     }
   }
   
-  private void getAllMoves() {
-    // Calculate all the attacks to the current side to move
-    getAllAttacks();
+  private void getAllMasks() {
     // Calculate the preliminary allowed pushes/captures
-    long pushMask = unoccupied;
-    long captureMask = inactiveOccupancy;
+    pushMask = unoccupied;
+    captureMask = inactiveOccupancy;
     
     int checkerCount = BitBoard.popCount(checkers);
     if (checkerCount > 1) {
@@ -354,34 +352,244 @@ public class MoveGenerator {
       pushMask &= checkPaths; // Can only push to checker path
       captureMask &= checkers; // Can only capture the checker
     }
+  }
+  
+  private void emitAllMoves() {
     // With the calculated [pushMask] and [captureMask] generate the moves
     movesByPawn(pushMask, captureMask);
-    movesBySlider(Board.ROOKS, MoveData.CARDINAL, MoveData.DIAGONAL, pushMask, captureMask);
+    movesBySlider(Board.ROOKS, pushMask, captureMask);
     movesByKnight(pushMask, captureMask);
-    movesBySlider(Board.BISHOPS, MoveData.DIAGONAL, MoveData.DIRECTION_COUNT, pushMask, captureMask);
-    movesBySlider(Board.QUEENS, MoveData.CARDINAL, MoveData.DIRECTION_COUNT, pushMask, captureMask);
+    movesBySlider(Board.BISHOPS, pushMask, captureMask);
+    movesBySlider(Board.QUEENS, pushMask, captureMask);
     movesByKing();
   }
   
+  private void getAllMoves() {
+    // Calculate all the attacks to the current side to move
+    getAllAttacks();
+    getAllMasks();
+    emitAllMoves();
+  }
+  
+  private void emitStage(MoveList moves, boolean captures, boolean quiets) {
+    this.moves = moves;
+    moves.clear();
+    genCaptures = captures;
+    genQuiets = quiets;
+    emitAllMoves();
+    genCaptures = true;
+    genQuiets = true;
+  }
+  
+  /* [Design Note]
+   * Staged generation runs the attacks generation phase once in [prepare]
+   * The captures and the quiets are then emitted separately, each only when asked for
+   * The board must be in the same position it was prepared with when a stage is emitted
+   */
+  public void prepare(Board board) {
+    init(board, scratchMoves);
+    getAllAttacks();
+    getAllMasks();
+  }
+  // Captures, en passant and every promotion of the prepared board
+  public void generateCaptures(MoveList moves) { emitStage(moves, true, false); }
+  // Every other move of the prepared board
+  public void generateQuiets(MoveList moves) { emitStage(moves, false, true); }
+  
+  /* [Design Note]
+   * Attackers to a square are found by reversing the attack tables
+   * A piece of kind K on [square] attacks exactly the squares a K standing there would be attacked from
+   * Pawns are the only asymmetric piece. The captures of the other side are used instead
+   * The sliders are looked up with [occupancy] rather than the board occupancy, so callers can
+   *  ... stage a move or remove pieces (x-rays) without touching the board
+   */
+  private static long attackersTo(long[] bbs, int square, int bySide, long occupancy) {
+    return (MoveData.pawnCaptures[square][Piece.invertSide(bySide)] & bbs[Board.PAWNS | bySide])
+      | (MoveData.knightMoves[square] & bbs[Board.KNIGHTS | bySide])
+      | (MoveData.kingMoves[square] & bbs[Board.KINGS | bySide])
+      | (Magic.rookAttacks(square, occupancy) & (bbs[Board.ROOKS | bySide] | bbs[Board.QUEENS | bySide]))
+      | (Magic.bishopAttacks(square, occupancy) & (bbs[Board.BISHOPS | bySide] | bbs[Board.QUEENS | bySide]));
+  }
+  
+  // The pieces of [bySide] that attack [square] when the board is occupied by [occupancy]
+  public static long attackersTo(Board board, int square, int bySide, long occupancy) {
+    return attackersTo(board.getBoards(), square, bySide, occupancy);
+  }
+  
+  // The pieces of both sides that attack [square] when the board is occupied by [occupancy]
+  public static long attackersTo(Board board, int square, long occupancy) {
+    long[] bbs = board.getBoards();
+    long rookAttacks = Magic.rookAttacks(square, occupancy);
+    long bishopAttacks = Magic.bishopAttacks(square, occupancy);
+    return (MoveData.pawnCaptures[square][Piece.DARK] & bbs[Board.LIGHT_PAWNS])
+      | (MoveData.pawnCaptures[square][Piece.LIGHT] & bbs[Board.DARK_PAWNS])
+      | (MoveData.knightMoves[square] & (bbs[Board.LIGHT_KNIGHTS] | bbs[Board.DARK_KNIGHTS]))
+      | (MoveData.kingMoves[square] & (bbs[Board.LIGHT_KINGS] | bbs[Board.DARK_KINGS]))
+      | (rookAttacks & (bbs[Board.LIGHT_ROOKS] | bbs[Board.DARK_ROOKS] | bbs[Board.LIGHT_QUEENS] | bbs[Board.DARK_QUEENS]))
+      | (bishopAttacks & (bbs[Board.LIGHT_BISHOPS] | bbs[Board.DARK_BISHOPS] | bbs[Board.LIGHT_QUEENS] | bbs[Board.DARK_QUEENS]));
+  }
+  
+  // Whether the king of [side] is attacked in [board]. Unlike [isChecked], it needs no generation
+  public static boolean isKingAttacked(Board board, int side) {
+    long[] bbs = board.getBoards();
+    int kingSquare = BitBoard.bitScanForward(bbs[Board.KINGS | side]);
+    return BitBoard.notEmpty(attackersTo(bbs, kingSquare, Piece.invertSide(side), bbs[Board.LIGHT_ALL] | bbs[Board.DARK_ALL]));
+  }
+  
+  /* [Design Note]
+   * Single move validation without generating the move list
+   * [isPseudoLegal] checks that [move] is exactly the encoding the generator would produce for
+   *  ... its source and destination in [board], ignoring whether the king is left in check
+   * [isLegal] then makes the move on the occupancy only and looks for attackers to the king
+   * Neither touches the generator state, so a prepared board stays prepared
+   */
+  private static final int VALID_MOVE_BITS = Move.ERROR_BIT - 1;
+  
+  public boolean isPseudoLegal(Board board, int move) {
+    if ((move & ~VALID_MOVE_BITS) != 0) return false;
+    int side = board.getPlySide();
+    long[] bbs = board.getBoards();
+    long own = bbs[Board.ALL | side];
+    long occupancy = own | bbs[Board.ALL | Piece.invertSide(side)];
+    
+    if (Move.isCastle(move)) {
+      int castle = Move.getCastle(move);
+      return Piece.side(castle) == side && board.getCastle(castle) && move == Move.castle(castle)
+        && BitBoard.isEmpty(MoveData.castleClearSquares[castle] & occupancy);
+    }
+    
+    int src = Move.getSrc(move);
+    int dst = Move.getDst(move);
+    int piece = board.getPiece(src);
+    long dstBit = BitBoard.bit(dst);
+    if (piece == Piece.NONE || Piece.side(piece) != side) return false;
+    // Cannot land on an own piece or capture the king
+    if (BitBoard.notEmpty(dstBit & (own | bbs[Board.KINGS | Piece.invertSide(side)]))) return false;
+    boolean isCapture = BitBoard.notEmpty(dstBit & occupancy);
+    
+    int kind = Piece.kind(piece);
+    if (kind == Piece.PAWN) return move == expectedPawnMove(board, move, src, dst, isCapture, occupancy);
+    
+    long reach;
+    switch (kind) {
+      case Piece.KNIGHT: reach = MoveData.knightMoves[src]; break;
+      case Piece.KING: reach = MoveData.kingMoves[src]; break;
+      default: reach = sliderAttacks(kind, src, occupancy);
+    }
+    return BitBoard.notEmpty(reach & dstBit) && move == (isCapture ? Move.capture(src, dst) : Move.push(src, dst));
+  }
+  
+  // The encoding of the pawn move from [src] to [dst] of the kind [move] claims to be
+  private static int expectedPawnMove(Board board, int move, int src, int dst, boolean isCapture, long occupancy) {
+    int side = board.getPlySide();
+    int forward = side == Piece.LIGHT ? 8 : -8;
+    long dstBit = BitBoard.bit(dst);
+    long captures = MoveData.pawnCaptures[src][side];
+    
+    if (Move.isEnPassant(move)) {
+      if (dst != board.getEpSquare() || BitBoard.isEmpty(captures & dstBit)) return Move.ERROR_BIT;
+      return Move.enPassant(src, dst, dst - forward);
+    }
+    if (Move.isDoublePush(move)) {
+      if (dst != src + 2 * forward || BitBoard.isEmpty(dstBit & MoveData.doublePushes[side])
+          || BitBoard.notEmpty((BitBoard.bit(src + forward) | dstBit) & occupancy)) return Move.ERROR_BIT;
+      return Move.doublePush(src, dst, src + forward);
+    }
+    if (isCapture ? BitBoard.isEmpty(captures & dstBit) : dst != src + forward) return Move.ERROR_BIT;
+    if (Square.getY(dst) == MoveData.promoteRanks[side]) {
+      int promoteKind = Move.getPromoteKind(move);
+      if (promoteKind != Piece.ROOK && promoteKind != Piece.KNIGHT
+          && promoteKind != Piece.BISHOP && promoteKind != Piece.QUEEN) return Move.ERROR_BIT;
+      return isCapture ? Move.promoteCapture(src, dst, promoteKind) : Move.promotePush(src, dst, promoteKind);
+    }
+    return isCapture ? Move.capture(src, dst) : Move.push(src, dst);
+  }
+  
+  public boolean isLegal(Board board, int move) {
+    if (!isPseudoLegal(board, move)) return false;
+    int side = board.getPlySide();
+    int enemySide = Piece.invertSide(side);
+    long[] bbs = board.getBoards();
+    long occupancy = bbs[Board.LIGHT_ALL] | bbs[Board.DARK_ALL];
+    int kingSquare = BitBoard.bitScanForward(bbs[Board.KINGS | side]);
+    
+    if (Move.isCastle(move)) {
+      // The king cannot castle out of, through or into a check
+      if (BitBoard.notEmpty(attackersTo(bbs, kingSquare, enemySide, occupancy))) return false;
+      for (long safe = MoveData.castleSafeSquares[Move.getCastle(move)];
+           BitBoard.notEmpty(safe); safe = BitBoard.popLSB(safe)) {
+        if (BitBoard.notEmpty(attackersTo(bbs, BitBoard.bitScanForward(safe), enemySide, occupancy))) return false;
+      }
+      return true;
+    }
+    
+    int src = Move.getSrc(move);
+    int dst = Move.getDst(move);
+    long captured = BitBoard.allClear();
+    if (Move.isCapture(move)) captured = BitBoard.bit(dst);
+    else if (Move.isEnPassant(move)) captured = BitBoard.bit(Move.getOtherSquare(move));
+    // Stage the occupancy as if the move is made
+    long workingBoard = occupancy & ~(BitBoard.bit(src) | captured) | BitBoard.bit(dst);
+    if (src == kingSquare) kingSquare = dst;
+    // The captured piece attacks nothing anymore
+    return BitBoard.isEmpty(attackersTo(bbs, kingSquare, enemySide, workingBoard) & ~captured);
+  }
+  
   public boolean isChecked() {
     return BitBoard.popCount(checkers) > 0;
   }
   // Get the recently calculated checkers
   public long getLastCheckers() { return checkers; }
-  public void getMoves(Board board, ArrayList<Integer> moves) {
+  public void getMoves(Board board, MoveList moves) {
     init(board, moves);
     getAllMoves();
   }
   
-  public ArrayList<Integer> getMoves(Board board) {
-    init(board, new ArrayList<>());
+  // Captures, en passant and every promotion. No push emission loop runs
+  public void getCaptures(Board board, MoveList moves) {
+    prepare(board);
+    generateCaptures(moves);
+  }
+  
+  // The moves skipped by [getCaptures]
+  public void getQuiets(Board board, MoveList moves) {
+    prepare(board);
+    generateQuiets(moves);
+  }
+  
+  // Every evasion if the side to move is checked, otherwise only the captures. For quiescence search
+  public void getEvasionsOrCaptures(Board board, MoveList moves) {
+    prepare(board);
+    if (isChecked()) emitStage(moves, true, true);
+    else generateCaptures(moves);
+  }
+  
+  // Counts the legal moves without encoding them. Same as the size of [getMoves] but faster
+  public int countMoves(Board board) {
+    init(board, scratchMoves);
+    countOnly = true;
+    moveCount = 0;
     getAllMoves();
-    return moves;
+    countOnly = false;
+    return moveCount;
+  }
+  
+  public void getMoves(Board board, ArrayList<Integer> moves) {
+    getMoves(board, scratchMoves);
+    moves.clear();
+    scratchMoves.addTo(moves);
+  }
+  
+  public ArrayList<Integer> getMoves(Board board) {
+    getMoves(board, scratchMoves);
+    return scratchMoves.toArrayList();
   }
   
   // A more memory expensive method but can tell the source squares
   public void getSortedMoves(Board board, ArrayList<Integer>[] moves) {
-    for (int move : getMoves(board)) {
+    getMoves(board, scratchMoves);
+    for (int i = 0; i < scratchMoves.size(); ++i) {
+      int move = scratchMoves.get(i);
       ArrayList<Integer> subContainer = moves[Move.getSrc(move)];
       assert subContainer != null;
       subContainer.add(move);
@@ -403,7 +611,7 @@ public class MoveGenerator {
   // Test methods
   private void testAttacksReloadBoard(Board board, String fen) {
     FEN.loadFEN(board, fen);
-    init(board, new ArrayList<>());
+    init(board, scratchMoves);
     getAllAttacks();
   }
   
@@ -468,22 +676,64 @@ public class MoveGenerator {
   
   public void testShowMoves(Board board) {
     board.print();
-    for (final int move : getMoves(board)) {
-      System.out.println(Move.getLAN(move));
+    getMoves(board, scratchMoves);
+    for (int i = 0; i < scratchMoves.size(); ++i) {
+      System.out.println(Move.getLAN(scratchMoves.get(i)));
+    }
+  }
+  
+  // One move list per ply of the perft recursion
+  private MoveList[] perftMoves = MoveList.newStack(0);
+  
+  // Counts the leaf nodes [depth] plies below [board]
+  public long perft(Board board, int depth) {
+    if (perftMoves.length <= depth) perftMoves = MoveList.newStack(depth + 1);
+    return depthTest(board, depth);
+  }
+  
+  // Counts the leaf nodes [depth] plies below [board], reusing the counts of transposed subtrees
+  public long perft(Board board, int depth, PerftTable table) {
+    if (perftMoves.length <= depth) perftMoves = MoveList.newStack(depth + 1);
+    return hashedDepthTest(board, depth, table);
+  }
+  
+  private long hashedDepthTest(Board board, int depth, PerftTable table) {
+    // Shallow subtrees are cheaper to count than to look up
+    if (depth <= 1) return depthTest(board, depth);
+    
+    long key = board.getZobrist();
+    long nodes = table.probe(key, depth);
+    if (nodes >= 0) return nodes;
+    
+    MoveList moves = perftMoves[depth];
+    nodes = 0;
+    
+    getMoves(board, moves);
+    for (int i = 0; i < moves.size(); ++i) {
+      int move = moves.get(i);
+      board.applyMove(move);
+      nodes += hashedDepthTest(board, depth - 1, table);
+      board.unmakeMove(move);
     }
+    
+    table.store(key, depth, nodes);
+    return nodes;
   }
   
-  private int depthTest(Board board, int depth) {
+  private long depthTest(Board board, int depth) {
     if (depth <= 0) return 1;
+    // Bulk count the leaves. No need to make the moves just to count them
+    if (depth == 1) return countMoves(board);
     
-    Board cloneBoard = new Board();
-    ArrayList<Integer> moves = getMoves(board);
-    int nodes = 0;
+    MoveList moves = perftMoves[depth];
+    long nodes = 0;
     
-    for (final int move : moves) {
-      cloneBoard.copyFrom(board);
-      cloneBoard.applyMove(move);
-      nodes += depthTest(cloneBoard, depth - 1);
+    getMoves(board, moves);
+    for (int i = 0; i < moves.size(); ++i) {
+      int move = moves.get(i);
+      board.applyMove(move);
+      nodes += depthTest(board, depth - 1);
+      board.unmakeMove(move);
     }
     
     return nodes;
@@ -500,15 +750,17 @@ public class MoveGenerator {
       }
     }
     
-    Board cloneBoard = new Board();
-    ArrayList<Integer> moves = getMoves(board);
-    int totalNodes = 0;
+    if (perftMoves.length <= depth) perftMoves = MoveList.newStack(depth + 1);
+    MoveList moves = perftMoves[depth];
+    long totalNodes = 0;
     
-    for (final int move : moves) {
+    getMoves(board, moves);
+    for (int i = 0; i < moves.size(); ++i) {
+      int move = moves.get(i);
       System.out.print(Move.getSSAN(move) + ' ');
-      cloneBoard.copyFrom(board);
-      cloneBoard.applyMove(move);
-      int nodes = depthTest(cloneBoard, depth - 1);
+      board.applyMove(move);
+      long nodes = depthTest(board, depth - 1);
+      board.unmakeMove(move);
       System.out.println(nodes);
       totalNodes += nodes;
     }
@@ -516,4 +768,4 @@ public class MoveGenerator {
     System.out.println();
     System.out.print(totalNodes);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,77 @@
+package jcheese;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/* [Design Note]
+ * A reusable list of encoded moves backed by a primitive int array
+ * Unlike ArrayList<Integer>, adding a move never allocates. The list is cleared and refilled in place
+ * The capacity defaults to [MAX_MOVES], which bounds the legal moves of any reachable position
+ * Searches should hold one list per ply, see [newStack]
+ */
+public class MoveList {
+  // The maximum number of legal moves in a chess position is 218
+  public static final int MAX_MOVES = 256;
+
+  private final int[] moves;
+  private int size;
+
+  public MoveList() { this(MAX_MOVES); }
+  public MoveList(int capacity) {
+    moves = new int[capacity];
+  }
+
+  public static MoveList[] newStack(int plies) {
+    MoveList[] stack = new MoveList[plies];
+    for (int i = 0; i < stack.length; ++i) {
+      stack[i] = new MoveList();
+    }
+    return stack;
+  }
+
+  public int size() { return size; }
+  public boolean isEmpty() { return size == 0; }
+  public void clear() { size = 0; }
+
+  public void add(int move) {
+    assert size < moves.length; // Capacity must be enough for all the moves
+    moves[size++] = move;
+  }
+  public int get(int index) {
+    assert index < size;
+    return moves[index];
+  }
+  public void set(int index, int move) {
+    assert index < size;
+    moves[index] = move;
+  }
+  public void swap(int i, int j) {
+    int temp = moves[i];
+    moves[i] = moves[j];
+    moves[j] = temp;
+  }
+
+  public int indexOf(int move) {
+    for (int i = 0; i < size; ++i) {
+      if (moves[i] == move) return i;
+    }
+    return -1;
+  }
+  public boolean contains(int move) { return indexOf(move) != -1; }
+
+  public MoveList copyFrom(MoveList src) {
+    assert src.size <= moves.length;
+    System.arraycopy(src.moves, 0, moves, 0, src.size);
+    size = src.size;
+    return this;
+  }
+  public int[] toArray() { return Arrays.copyOf(moves, size); }
+  public ArrayList<Integer> toArrayList() {
+    ArrayList<Integer> list = new ArrayList<>(size);
+    addTo(list);
+    return list;
+  }
+  public void addTo(ArrayList<Integer> list) {
+    for (int i = 0; i < size; ++i) list.add(moves[i]);
+  }
+}
@@ -0,0 +1,176 @@
+package jcheese;
+
+/* [Design Note]
+ * Yields the legal moves of a node one at a time, in stages:
+ *   1. The hash move
+ *   2. Captures and promotions, best victim and least valuable attacker first (MVV-LVA)
+ *   3. The killer moves, then the countermove
+ *   4. The remaining quiet moves, best history score first when a history table is given
+ * A stage is generated only when the previous one is exhausted. The attacks, pins and check
+ *  ... masks of the node are computed once by [MoveGenerator.prepare] and shared by every stage
+ * The history and countermove tables belong to the search. Both are flat and indexed by
+ *  ... [butterflyIndex], the side to move with the source and destination of a move
+ * The hash and killer moves are validated with [MoveGenerator.isLegal] before any generation
+ * For quiescence search, [initQuiescence] yields only the captures stage, or every evasion
+ *  ... in MVV-LVA then generation order if evasions are asked for and the side to move is checked
+ * A search keeps one picker per ply. The board must be back in the node position on each [next]
+ */
+public class MovePicker {
+  // Not a move. Encodes A1 to A1 which is never generated
+  public static final int NO_MOVE = 0;
+
+  private static final int STAGE_HASH = 0;
+  private static final int STAGE_CAPTURES_INIT = 1;
+  private static final int STAGE_CAPTURES = 2;
+  private static final int STAGE_KILLERS = 3;
+  private static final int STAGE_QUIETS = 4;
+  private static final int STAGE_DONE = 5;
+
+  // Size of a table indexed by [butterflyIndex]
+  public static final int BUTTERFLY_SIZE = Piece.SIDE_COUNT * 64 * 64;
+
+  // Ordering values indexed by [Piece.kindIndex]. Only used to rank captures against each other
+  private static final int[] ORDER_VALUES = { 1, 5, 3, 3, 9, 0 };
+
+  private final MoveGenerator gen = new MoveGenerator();
+  private final MoveList captures = new MoveList();
+  private final MoveList quiets = new MoveList();
+  private final int[] scores = new int[MoveList.MAX_MOVES];
+  private Board board;
+  private int stage;
+  private int index;
+  private boolean capturesReady;
+  private boolean quietsReady;
+  private int hashMove;
+  private boolean capturesOnly;
+  // The two killers and the countermove
+  private final int[] killers = new int[3];
+  private int[] history;
+
+  // The move bits b0-11 are the source and destination squares
+  public static int butterflyIndex(int side, int move) { return side << 12 | (move & 0xFFF); }
+
+  public void init(Board board, int hashMove, int killer1, int killer2, int counterMove, int[] history) {
+    this.board = board;
+    gen.prepare(board);
+    stage = STAGE_HASH;
+    index = 0;
+    capturesReady = false;
+    quietsReady = false;
+    capturesOnly = false;
+    this.hashMove = hashMove;
+    killers[0] = killer1;
+    killers[1] = killer2 != killer1 ? killer2 : NO_MOVE;
+    killers[2] = counterMove != killer1 && counterMove != killer2 ? counterMove : NO_MOVE;
+    this.history = history;
+  }
+  public void init(Board board, int hashMove, int killer1, int killer2) {
+    init(board, hashMove, killer1, killer2, NO_MOVE, null);
+  }
+  public void init(Board board) { init(board, NO_MOVE, NO_MOVE, NO_MOVE); }
+  public void initQuiescence(Board board, boolean evasions) {
+    init(board);
+    capturesOnly = !(evasions && gen.isChecked());
+  }
+
+  public boolean isChecked() { return gen.isChecked(); }
+  public long getCheckers() { return gen.getLastCheckers(); }
+
+  private static boolean isTactical(int move) {
+    return Move.isCapture(move) || Move.isEnPassant(move) || Move.isPromote(move);
+  }
+
+  private void prepareCaptures() {
+    if (capturesReady) return;
+    gen.generateCaptures(captures);
+    for (int i = 0; i < captures.size(); ++i) {
+      int move = captures.get(i);
+      int attacker = Piece.kindIndex(Piece.kind(board.getPiece(Move.getSrc(move))));
+      int score = -attacker;
+      if (Move.isCapture(move)) {
+        score += 16 * ORDER_VALUES[Piece.kindIndex(Piece.kind(board.getPiece(Move.getDst(move))))];
+      } else if (Move.isEnPassant(move)) {
+        score += 16 * ORDER_VALUES[Piece.kindIndex(Piece.PAWN)];
+      }
+      if (Move.isPromote(move)) score += 16 * ORDER_VALUES[Piece.kindIndex(Move.getPromoteKind(move))];
+      scores[i] = score;
+    }
+    capturesReady = true;
+  }
+
+  private void prepareQuiets() {
+    if (quietsReady) return;
+    gen.generateQuiets(quiets);
+    if (history != null) {
+      int side = board.getPlySide();
+      for (int i = 0; i < quiets.size(); ++i) scores[i] = history[butterflyIndex(side, quiets.get(i))];
+    }
+    quietsReady = true;
+  }
+
+  // Selection sort step. Brings the best scoring move of [moves] from [from] onwards to [from]
+  private int pickBest(MoveList moves, int from) {
+    int best = from;
+    for (int i = from + 1; i < moves.size(); ++i) {
+      if (scores[i] > scores[best]) best = i;
+    }
+    if (best != from) {
+      moves.swap(from, best);
+      int temp = scores[from];
+      scores[from] = scores[best];
+      scores[best] = temp;
+    }
+    return moves.get(from);
+  }
+
+  private boolean isKiller(int move) {
+    return move == killers[0] || move == killers[1] || move == killers[2];
+  }
+
+  // Returns the next legal move or [NO_MOVE] once every move is yielded
+  // Each stage falls through into the next one once it runs out of moves
+  @SuppressWarnings("fallthrough")
+  public int next() {
+    switch (stage) {
+      case STAGE_HASH:
+        stage = STAGE_CAPTURES_INIT;
+        if (hashMove != NO_MOVE && gen.isLegal(board, hashMove)) return hashMove;
+        // Fallthrough
+      case STAGE_CAPTURES_INIT:
+        prepareCaptures();
+        index = 0;
+        stage = STAGE_CAPTURES;
+        // Fallthrough
+      case STAGE_CAPTURES:
+        while (index < captures.size()) {
+          int move = pickBest(captures, index++);
+          if (move != hashMove) return move;
+        }
+        if (capturesOnly) {
+          stage = STAGE_DONE;
+          return NO_MOVE;
+        }
+        index = 0;
+        stage = STAGE_KILLERS;
+        // Fallthrough
+      case STAGE_KILLERS:
+        while (index < killers.length) {
+          int killer = killers[index++];
+          if (killer != NO_MOVE && killer != hashMove && !isTactical(killer) && gen.isLegal(board, killer)) return killer;
+        }
+        prepareQuiets();
+        index = 0;
+        stage = STAGE_QUIETS;
+        // Fallthrough
+      case STAGE_QUIETS:
+        while (index < quiets.size()) {
+          int move = history != null ? pickBest(quiets, index++) : quiets.get(index++);
+          if (move != hashMove && !isKiller(move)) return move;
+        }
+        stage = STAGE_DONE;
+        // Fallthrough
+      default:
+        return NO_MOVE;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package jcheese;
+
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import jcheese.util.FEN;
+
+/* [Design Note]
+ * Parallel perft over a ForkJoinPool
+ * The root moves are always split into tasks. Each task splits its own moves again
+ *  ... until [splitPlies] levels below the root are reached
+ * A task owns a copy of its board. The sequential subtree below the last split is counted
+ *  ... by the generator of the worker thread running it, so generators are never shared
+ * The divide output is printed after every root task has joined, in generation order
+ * With a [PerftTable] set, every worker probes and fills the same table
+ */
+public class Perft {
+  // Below this depth a subtree is too small to be worth a task of its own
+  private static final int MIN_SPLIT_DEPTH = 3;
+
+  private final ForkJoinPool pool;
+  private final int splitPlies;
+  private final ThreadLocal<MoveGenerator> generators = ThreadLocal.withInitial(MoveGenerator::new);
+  private PerftTable table;
+
+  public Perft(int threads, int splitPlies) {
+    if (threads < 1) throw new IllegalArgumentException("Must have at least one thread");
+    if (splitPlies < 1) throw new IllegalArgumentException("Must split at least at the root");
+    pool = new ForkJoinPool(threads);
+    this.splitPlies = splitPlies;
+  }
+  public Perft() { this(Runtime.getRuntime().availableProcessors(), 2); }
+
+  // Pass null to count without a table
+  public Perft setTable(PerftTable table) {
+    this.table = table;
+    return this;
+  }
+  public PerftTable getTable() { return table; }
+
+  private class PerftTask extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 0xC0FFEE;
+
+    private final Board board;
+    private final int depth;
+    private final int pliesToSplit;
+
+    public PerftTask(Board board, int depth, int pliesToSplit) {
+      this.board = board;
+      this.depth = depth;
+      this.pliesToSplit = pliesToSplit;
+    }
+
+    @Override
+    protected Long compute() {
+      MoveGenerator gen = generators.get();
+      if (pliesToSplit <= 0 || depth < MIN_SPLIT_DEPTH) {
+        return table != null ? gen.perft(board, depth, table) : gen.perft(board, depth);
+      }
+
+      if (table != null) {
+        long nodes = table.probe(board.getZobrist(), depth);
+        if (nodes >= 0) return nodes;
+      }
+
+      PerftTask[] tasks = split(gen, board, depth, pliesToSplit);
+      invokeAll(tasks);
+      long nodes = 0;
+      for (final PerftTask task : tasks) nodes += task.join();
+      if (table != null) table.store(board.getZobrist(), depth, nodes);
+      return nodes;
+    }
+  }
+
+  private PerftTask[] split(MoveGenerator gen, Board board, int depth, int pliesToSplit) {
+    MoveList moves = new MoveList();
+    gen.getMoves(board, moves);
+    PerftTask[] tasks = new PerftTask[moves.size()];
+    for (int i = 0; i < tasks.length; ++i) {
+      Board child = board.copy();
+      child.applyMove(moves.get(i));
+      tasks[i] = new PerftTask(child, depth - 1, pliesToSplit - 1);
+    }
+    return tasks;
+  }
+
+  public long run(Board board, int depth) {
+    return pool.invoke(new PerftTask(board.copy(), depth, splitPlies));
+  }
+
+  // Prints the node count of each root move, then the total, in the perftree format
+  public long divide(Board board, int depth, PrintStream ps) {
+    MoveList moves = new MoveList();
+    new MoveGenerator().getMoves(board, moves);
+    PerftTask[] tasks = new PerftTask[moves.size()];
+    for (int i = 0; i < tasks.length; ++i) {
+      Board child = board.copy();
+      child.applyMove(moves.get(i));
+      tasks[i] = new PerftTask(child, depth - 1, splitPlies - 1);
+      pool.execute(tasks[i]);
+    }
+
+    long totalNodes = 0;
+    for (int i = 0; i < tasks.length; ++i) {
+      long nodes = tasks[i].join();
+      ps.print(Move.getSSAN(moves.get(i)) + ' ');
+      ps.println(nodes);
+      totalNodes += nodes;
+    }
+
+    ps.println();
+    ps.print(totalNodes);
+    return totalNodes;
+  }
+
+  public void testForPerftree(int depth, String fen, String[] ssans) {
+    Board board = new Board();
+    FEN.loadFEN(board, fen);
+
+    if (ssans.length == 1) {
+      for (String ssan : ssans[0].split("\\s+")) {
+        board.applyMove(Move.fromSSAN(board, ssan));
+      }
+    }
+
+    divide(board, depth, System.out);
+  }
+
+  public void shutdown() { pool.shutdown(); }
+}
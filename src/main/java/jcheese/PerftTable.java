@@ -0,0 +1,58 @@
+package jcheese;
+
+import java.util.Arrays;
+
+/* [Design Note]
+ * A fixed-size cache of perft subtree counts keyed by [Board.getZobrist]
+ * An entry is one slot of [keys] and [data], indexed by the low bits of the key:
+ *   data b[0:7] -> depth of the subtree
+ *   data b[8:63] -> leaf node count of the subtree
+ *   keys -> the Zobrist key XORed with the data
+ * The table is shared by threads without locks. A torn or racing write leaves a slot
+ *  ... whose key no longer XORs back to a matching key, so the probe simply misses
+ * Entries are always replaced. Perft counts are exact, so any hit is as good as another
+ */
+public class PerftTable {
+  private static final int DEPTH_BITS = 8;
+  private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+  private static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+  private final long[] keys;
+  private final long[] data;
+  private final int mask;
+
+  public PerftTable(int sizeMB) {
+    if (sizeMB < 1) throw new IllegalArgumentException("Table size must be at least 1 MB");
+    long entries = Long.highestOneBit((long) sizeMB * 1024 * 1024 / ENTRY_BYTES);
+    // An array cannot index past Integer.MAX_VALUE
+    entries = Math.min(entries, 1L << 30);
+    keys = new long[(int) entries];
+    data = new long[(int) entries];
+    mask = (int) entries - 1;
+  }
+
+  public int capacity() { return keys.length; }
+
+  // Returns the cached node count or -1 if the subtree is not in the table
+  public long probe(long key, int depth) {
+    int index = (int) key & mask;
+    long entry = data[index];
+    if ((keys[index] ^ entry) == key && (entry & DEPTH_MASK) == depth) {
+      return entry >>> DEPTH_BITS;
+    }
+    return -1;
+  }
+
+  public void store(long key, int depth, long nodes) {
+    assert depth >= 0 && depth <= DEPTH_MASK;
+    int index = (int) key & mask;
+    long entry = (nodes << DEPTH_BITS) | depth;
+    data[index] = entry;
+    keys[index] = key ^ entry;
+  }
+
+  public void clear() {
+    Arrays.fill(keys, 0L);
+    Arrays.fill(data, 0L);
+  }
+}
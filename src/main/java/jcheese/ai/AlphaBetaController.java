@@ -0,0 +1,240 @@
+package jcheese.ai;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import jcheese.*;
+import jcheese.client.*;
+
+/* [Design Note]
+ * A controller that thinks with [Search]
+ * The controller reads the game position from [gameBoard], usually the board of the Server
+ *  ... it plays on, e.g. new AlphaBetaController(server.board)
+ * The budget is any mix of a depth, node and time limit. With no limit at all, a search would
+ *  ... never end, so a default time limit applies
+ * In timed games the clock decides the time of a move instead of the time limit. It is a share
+ *  ... of the remaining time plus most of the increment, keeping a safety margin in hand. The
+ *  ... margin covers the handoffs between the Server and the search, and a search that stops
+ *  ... late because other threads, such as a pondering opponent, compete for the CPU. It is
+ *  ... [MOVE_OVERHEAD_NANOS] plus [1 / OVERHEAD_DIVISOR] of the remaining time
+ *  ... The clock also shows how late the moves actually are. That lag, averaged over the last
+ *  ... moves, is taken from the budget too, so a loaded machine spends less time thinking
+ * The transposition table lives for the whole game. Its size is set in MB, [DEFAULT_HASH_MB]
+ *  ... unless changed before the first move
+ * With pondering on, the controller searches the reply expected by its last PV while the
+ *  ... opponent thinks. The pondering search has the depth and node limits but no time limit
+ *  ... If the opponent plays the expected reply (a ponder hit), the search goes on and gets the
+ *  ... time of the move from then on. Otherwise it is stopped, and only the table keeps its work
+ */
+public class AlphaBetaController implements IPonderingController {
+  private static final long DEFAULT_TIME_LIMIT = 1000;
+  private static final int DEFAULT_HASH_MB = 16;
+  // How often a stopped pondering search is told again to stop, in case it had not started yet
+  private static final long STOP_RETRY_MILLIS = 10;
+  // The remaining time is spread over this many moves, the increment comes on top
+  private static final int MOVES_TO_GO = 30;
+  // The safety margin kept back from the remaining time
+  private static final long MOVE_OVERHEAD_NANOS = 20_000_000L;
+  private static final int OVERHEAD_DIVISOR = 50;
+
+  private final Board gameBoard;
+  private final Search search = new Search();
+  private int depthLimit;
+  private long nodeLimit;
+  private long timeLimit;
+  private int hashMB = DEFAULT_HASH_MB;
+  // The time of the current move by the clock, zero in untimed games
+  private long clockBudgetNanos;
+  // The clock time of the moves beyond their budget, a moving average
+  private long lagNanos;
+  // The remaining time and budget of the last move of each side, to measure [lagNanos]
+  private final long[] lastRemainingNanos = new long[Piece.SIDE_COUNT];
+  private final long[] lastBudgetNanos = new long[Piece.SIDE_COUNT];
+
+  private boolean ponderEnabled;
+  private final Board ponderBoard = new Board();
+  private final MoveGenerator moveGen = new MoveGenerator();
+  private ExecutorService ponderThread;
+  private Future<?> pondering;
+  private int ponderMove;
+  private boolean ponderHit;
+
+  public AlphaBetaController(Board gameBoard) {
+    this.gameBoard = gameBoard;
+  }
+
+  public AlphaBetaController setDepthLimit(int depth) {
+    depthLimit = depth;
+    return this;
+  }
+  public AlphaBetaController setNodeLimit(long nodes) {
+    nodeLimit = nodes;
+    return this;
+  }
+  // The thinking time per move in milliseconds
+  public AlphaBetaController setTimeLimit(long millis) {
+    timeLimit = millis;
+    return this;
+  }
+  // Replaces the transposition table, so any stored results are dropped
+  public AlphaBetaController setHashSize(int sizeMB) {
+    hashMB = sizeMB;
+    search.setTable(null);
+    return this;
+  }
+  // Searches with Lazy SMP when more than one
+  public AlphaBetaController setThreads(int threads) {
+    search.setThreads(threads);
+    return this;
+  }
+  public AlphaBetaController setPondering(boolean enabled) {
+    ponderEnabled = enabled;
+    return this;
+  }
+  public AlphaBetaController setInfoStream(PrintStream info) {
+    search.setInfoStream(info);
+    return this;
+  }
+
+  public Search getSearch() { return search; }
+
+  // The thinking time of a move in nanoseconds, zero if not limited by time
+  private long timeBudget() {
+    if (clockBudgetNanos > 0) return clockBudgetNanos;
+    boolean unlimited = depthLimit <= 0 && nodeLimit <= 0 && timeLimit <= 0;
+    return (unlimited ? DEFAULT_TIME_LIMIT : timeLimit) * 1_000_000L;
+  }
+
+  private static long allocate(long remainingNanos, long incrementNanos, long lagNanos) {
+    long budget = remainingNanos / MOVES_TO_GO + incrementNanos * 3 / 4 - lagNanos;
+    long margin = MOVE_OVERHEAD_NANOS + remainingNanos / OVERHEAD_DIVISOR + lagNanos;
+    budget = Math.min(budget, remainingNanos - margin);
+    // Nearly out of time. Still never zero, which would mean no limit. The floor stays below the
+    //  ... share of the remaining time, or it would decide every move
+    return Math.max(budget, Math.max(remainingNanos / (2 * MOVES_TO_GO), 1));
+  }
+
+  private void configure(long timeNanos) {
+    if (search.getTable() == null) search.setTable(new TranspositionTable(hashMB));
+    search.setDepthLimit(depthLimit)
+      .setNodeLimit(nodeLimit)
+      .setTimeLimitNanos(timeNanos);
+  }
+
+  private int think() {
+    if (ponderHit) {
+      // The pondering search is on the game position already
+      ponderHit = false;
+      long budget = timeBudget();
+      if (budget > 0) search.limitTimeNanos(budget);
+      awaitPondering(false);
+      return search.getBestMove();
+    }
+    configure(timeBudget());
+    return search.search(gameBoard);
+  }
+
+  // Returns only once the pondering search has ended, as [search] cannot run two searches
+  // If interrupted, stops the search, still waits for it and then restores the interrupt
+  private void awaitPondering(boolean stop) {
+    boolean interrupted = false;
+    try {
+      for (;;) {
+        if (stop) search.stop();
+        try {
+          if (stop) pondering.get(STOP_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+          else pondering.get();
+          break;
+        } catch (TimeoutException e) {
+          // Try to stop it again
+        } catch (InterruptedException e) {
+          interrupted = true;
+          stop = true;
+        } catch (ExecutionException e) {
+          throw new IllegalStateException("Pondering failed", e.getCause());
+        }
+      }
+    } finally {
+      pondering = null;
+      if (interrupted) Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void startPondering() {
+    // The last PV starts with the move just played, the expected reply comes next
+    if (!ponderEnabled || pondering != null || search.getPvLength() < 2) return;
+    ponderMove = search.getPvMove(1);
+    if (!moveGen.isLegal(gameBoard, ponderMove)) return;
+
+    ponderBoard.copyFrom(gameBoard);
+    ponderBoard.applyMove(ponderMove);
+    configure(0);
+    if (ponderThread == null) {
+      ponderThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ponder");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    pondering = ponderThread.submit(() -> search.search(ponderBoard));
+  }
+
+  @Override
+  public void stopPondering() {
+    if (pondering != null) awaitPondering(true);
+    ponderHit = false;
+  }
+
+  @Override
+  public void moveApplied(int move) {
+    if (pondering == null) return;
+    if (move == ponderMove) ponderHit = true;
+    else stopPondering();
+  }
+
+  @Override
+  public int getMove(ArrayList<Integer> legalMoves) {
+    int move = think();
+    assert legalMoves.contains(move);
+    return move;
+  }
+
+  @Override
+  public int getMove(MoveList legalMoves) {
+    int move = think();
+    assert legalMoves.contains(move);
+    return move;
+  }
+
+  @Override
+  public int getMove(MoveList legalMoves, long remainingNanos, long incrementNanos) {
+    int side = gameBoard.getPlySide();
+    if (lastBudgetNanos[side] > 0) {
+      // The clock lost [spent] since the last move of this side, then gained the increment
+      long spent = lastRemainingNanos[side] + incrementNanos - remainingNanos;
+      lagNanos = (3 * lagNanos + Math.max(spent - lastBudgetNanos[side], 0)) / 4;
+    }
+    clockBudgetNanos = allocate(remainingNanos, incrementNanos, lagNanos);
+    lastRemainingNanos[side] = remainingNanos;
+    lastBudgetNanos[side] = clockBudgetNanos;
+    try {
+      return getMove(legalMoves);
+    } finally {
+      clockBudgetNanos = 0;
+    }
+  }
+
+  @Override
+  public void illegalMove(int move) {
+    throw new AssertionError("Illegal move " + Move.getLAN(move));
+  }
+
+  @Override
+  public void acceptedMove(int move) {}
+}
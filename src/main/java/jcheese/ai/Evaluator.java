@@ -0,0 +1,242 @@
+package jcheese.ai;
+
+import jcheese.*;
+import jcheese.util.BitBoard;
+
+/* [Design Note]
+ * Static evaluation. Material plus piece-square tables
+ * Material, its imbalance terms, the game phase and the endgame scale come in one lookup from
+ *  ... [MaterialTable]. The phase blends the king between its middle game and endgame tables,
+ *  ... and the scale shrinks the advantage of a side that cannot win
+ * The tables are written from the light side's view, rank 8 first, so they read like a board
+ *  ... A light piece on square [sq] reads [sq ^ 56], a dark piece reads [sq] as is
+ * Pawn structure adds a bonus for passed pawns by rank, and penalties for isolated and
+ *  ... doubled pawns. What depends on the pawns only is cached in a [PawnTable]: the rank bonus
+ *  ... as a score, the passed pawns and the isolated and doubled counts. The terms built on
+ *  ... them also depend on the phase or the other pieces, so they are added on every call:
+ *   The isolated and doubled penalties grow from the middle game to the endgame
+ *   A passed pawn stopped by a piece right in front of it loses half its rank bonus
+ *   In the endgame a passed pawn gains as the enemy king is far from the square in front of
+ *    ... it and the own king is near, more so on the higher ranks
+ * The score is in centipawns relative to the side to move
+ * An instance owns its pawn table. Keep one per search thread
+ */
+public class Evaluator {
+  private static final int[] PAWN_TABLE = {
+     0,  0,  0,  0,  0,  0,  0,  0,
+    50, 50, 50, 50, 50, 50, 50, 50,
+    10, 10, 20, 30, 30, 20, 10, 10,
+     5,  5, 10, 25, 25, 10,  5,  5,
+     0,  0,  0, 20, 20,  0,  0,  0,
+     5, -5,-10,  0,  0,-10, -5,  5,
+     5, 10, 10,-20,-20, 10, 10,  5,
+     0,  0,  0,  0,  0,  0,  0,  0,
+  };
+  private static final int[] ROOK_TABLE = {
+     0,  0,  0,  0,  0,  0,  0,  0,
+     5, 10, 10, 10, 10, 10, 10,  5,
+    -5,  0,  0,  0,  0,  0,  0, -5,
+    -5,  0,  0,  0,  0,  0,  0, -5,
+    -5,  0,  0,  0,  0,  0,  0, -5,
+    -5,  0,  0,  0,  0,  0,  0, -5,
+    -5,  0,  0,  0,  0,  0,  0, -5,
+     0,  0,  0,  5,  5,  0,  0,  0,
+  };
+  private static final int[] KNIGHT_TABLE = {
+    -50,-40,-30,-30,-30,-30,-40,-50,
+    -40,-20,  0,  0,  0,  0,-20,-40,
+    -30,  0, 10, 15, 15, 10,  0,-30,
+    -30,  5, 15, 20, 20, 15,  5,-30,
+    -30,  0, 15, 20, 20, 15,  0,-30,
+    -30,  5, 10, 15, 15, 10,  5,-30,
+    -40,-20,  0,  5,  5,  0,-20,-40,
+    -50,-40,-30,-30,-30,-30,-40,-50,
+  };
+  private static final int[] BISHOP_TABLE = {
+    -20,-10,-10,-10,-10,-10,-10,-20,
+    -10,  0,  0,  0,  0,  0,  0,-10,
+    -10,  0,  5, 10, 10,  5,  0,-10,
+    -10,  5,  5, 10, 10,  5,  5,-10,
+    -10,  0, 10, 10, 10, 10,  0,-10,
+    -10, 10, 10, 10, 10, 10, 10,-10,
+    -10,  5,  0,  0,  0,  0,  5,-10,
+    -20,-10,-10,-10,-10,-10,-10,-20,
+  };
+  private static final int[] QUEEN_TABLE = {
+    -20,-10,-10, -5, -5,-10,-10,-20,
+    -10,  0,  0,  0,  0,  0,  0,-10,
+    -10,  0,  5,  5,  5,  5,  0,-10,
+     -5,  0,  5,  5,  5,  5,  0, -5,
+      0,  0,  5,  5,  5,  5,  0, -5,
+    -10,  5,  5,  5,  5,  5,  0,-10,
+    -10,  0,  5,  0,  0,  0,  0,-10,
+    -20,-10,-10, -5, -5,-10,-10,-20,
+  };
+  private static final int[] KING_TABLE = {
+    -30,-40,-40,-50,-50,-40,-40,-30,
+    -30,-40,-40,-50,-50,-40,-40,-30,
+    -30,-40,-40,-50,-50,-40,-40,-30,
+    -30,-40,-40,-50,-50,-40,-40,-30,
+    -20,-30,-30,-40,-40,-30,-30,-20,
+    -10,-20,-20,-20,-20,-20,-20,-10,
+     20, 20,  0,  0,  0,  0, 20, 20,
+     20, 30, 10,  0,  0, 10, 30, 20,
+  };
+  private static final int[] KING_ENDGAME_TABLE = {
+    -50,-40,-30,-20,-20,-30,-40,-50,
+    -30,-20,-10,  0,  0,-10,-20,-30,
+    -30,-10, 20, 30, 30, 20,-10,-30,
+    -30,-10, 30, 40, 40, 30,-10,-30,
+    -30,-10, 30, 40, 40, 30,-10,-30,
+    -30,-10, 20, 30, 30, 20,-10,-30,
+    -30,-30,  0,  0,  0,  0,-30,-30,
+    -50,-30,-30,-30,-30,-30,-30,-50,
+  };
+  // Indexed by [Piece.kindIndex]
+  private static final int[][] TABLES = {
+    PAWN_TABLE, ROOK_TABLE, KNIGHT_TABLE, BISHOP_TABLE, QUEEN_TABLE, KING_TABLE
+  };
+
+  // Passed pawn bonus indexed by rank, counted from the side's own back rank
+  private static final int[] PASSED_BONUS = { 0, 5, 10, 20, 35, 60, 100, 0 };
+  // Middle game and endgame penalties per pawn
+  private static final int ISOLATED_PENALTY = 10;
+  private static final int ISOLATED_ENDGAME_PENALTY = 20;
+  private static final int DOUBLED_PENALTY = 10;
+  private static final int DOUBLED_ENDGAME_PENALTY = 20;
+  // Endgame bonus per square of king distance to the square in front of a passed pawn, times the
+  //  ... rank from the third on
+  private static final int ENEMY_KING_DISTANCE_BONUS = 5;
+  private static final int OWN_KING_DISTANCE_PENALTY = 2;
+  private static final int PAWN_TABLE_ENTRIES = 1 << 14;
+
+  private static final long[] fileMasks = new long[8];
+  private static final long[] adjacentFileMasks = new long[8];
+  // The squares ahead of a pawn on its own and the adjacent files, indexed by side then square
+  private static final long[][] passedMasks = new long[Piece.SIDE_COUNT][64];
+  static {
+    for (int file = 0; file < 8; ++file) fileMasks[file] = 0x0101010101010101L << file;
+    for (int file = 0; file < 8; ++file) {
+      adjacentFileMasks[file] = (file > 0 ? fileMasks[file - 1] : 0L) | (file < 7 ? fileMasks[file + 1] : 0L);
+    }
+    for (int sq = 0; sq < 64; ++sq) {
+      long span = fileMasks[sq & 7] | adjacentFileMasks[sq & 7];
+      int rank = sq >> 3;
+      passedMasks[Piece.LIGHT][sq] = rank < 7 ? span & (-1L << (8 * (rank + 1))) : 0L;
+      passedMasks[Piece.DARK][sq] = span & ((1L << (8 * rank)) - 1);
+    }
+  }
+
+  private final PawnTable pawnTable = new PawnTable(PAWN_TABLE_ENTRIES);
+
+  public PawnTable getPawnTable() { return pawnTable; }
+
+  // Piece-square score. The material is counted by [MaterialTable]
+  private static int sideScore(long[] bbs, int side, int phase) {
+    int flip = side == Piece.LIGHT ? 56 : 0;
+    int score = 0;
+    for (int kind = Piece.PAWN; kind < Piece.KING; kind += 2) {
+      int[] table = TABLES[Piece.kindIndex(kind)];
+      for (long pieces = bbs[kind | side]; BitBoard.notEmpty(pieces); pieces = BitBoard.popLSB(pieces)) {
+        score += table[BitBoard.bitScanForward(pieces) ^ flip];
+      }
+    }
+    int king = BitBoard.bitScanForward(bbs[Board.KINGS | side]) ^ flip;
+    score += taper(KING_TABLE[king], KING_ENDGAME_TABLE[king], phase);
+    return score;
+  }
+
+  private static long passedPawns(long pawns, long enemyPawns, int side) {
+    long passed = 0L;
+    for (long rest = pawns; BitBoard.notEmpty(rest); rest = BitBoard.popLSB(rest)) {
+      int sq = BitBoard.bitScanForward(rest);
+      if (BitBoard.isEmpty(passedMasks[side][sq] & enemyPawns)) passed = BitBoard.set(passed, sq);
+    }
+    return passed;
+  }
+
+  private static int isolatedPawns(long pawns) {
+    int isolated = 0;
+    for (int file = 0; file < 8; ++file) {
+      if (BitBoard.isEmpty(pawns & adjacentFileMasks[file])) isolated += BitBoard.popCount(pawns & fileMasks[file]);
+    }
+    return isolated;
+  }
+
+  private static int doubledPawns(long pawns) {
+    int doubled = 0;
+    for (int file = 0; file < 8; ++file) doubled += Math.max(BitBoard.popCount(pawns & fileMasks[file]) - 1, 0);
+    return doubled;
+  }
+
+  private static int passedScore(long passed, int side) {
+    int score = 0;
+    for (; BitBoard.notEmpty(passed); passed = BitBoard.popLSB(passed)) {
+      int rank = BitBoard.bitScanForward(passed) >> 3;
+      score += PASSED_BONUS[side == Piece.LIGHT ? rank : 7 - rank];
+    }
+    return score;
+  }
+
+  // The pawn table slot of the pawns of [board], computed and stored on a miss
+  private int pawnSlot(Board board) {
+    long key = board.getPawnKey();
+    int slot = pawnTable.probe(key);
+    if (slot >= 0) return slot;
+
+    long[] bbs = board.getBoards();
+    long lightPawns = bbs[Board.LIGHT_PAWNS];
+    long darkPawns = bbs[Board.DARK_PAWNS];
+    long lightPassed = passedPawns(lightPawns, darkPawns, Piece.LIGHT);
+    long darkPassed = passedPawns(darkPawns, lightPawns, Piece.DARK);
+    int lightIsolated = isolatedPawns(lightPawns);
+    int darkIsolated = isolatedPawns(darkPawns);
+    int lightDoubled = doubledPawns(lightPawns);
+    int darkDoubled = doubledPawns(darkPawns);
+    int score = passedScore(lightPassed, Piece.LIGHT) - passedScore(darkPassed, Piece.DARK);
+    return pawnTable.store(key, score, lightPassed, darkPassed, lightIsolated, darkIsolated, lightDoubled, darkDoubled);
+  }
+
+  private static int distance(int a, int b) {
+    return Math.max(Math.abs(Square.getX(a) - Square.getX(b)), Math.abs(Square.getY(a) - Square.getY(b)));
+  }
+
+  private static int taper(int middle, int end, int phase) {
+    return (middle * phase + end * (MaterialTable.MAX_PHASE - phase)) / MaterialTable.MAX_PHASE;
+  }
+
+  // The pawn terms of [side] from the entry in [slot] that depend on more than the pawns
+  private int pawnTerms(long[] bbs, int slot, int side, int phase) {
+    int isolated = pawnTable.getCount(slot, PawnTable.ISOLATED, side);
+    int doubled = pawnTable.getCount(slot, PawnTable.DOUBLED, side);
+    int score = -isolated * taper(ISOLATED_PENALTY, ISOLATED_ENDGAME_PENALTY, phase)
+      - doubled * taper(DOUBLED_PENALTY, DOUBLED_ENDGAME_PENALTY, phase);
+
+    long occupied = bbs[Board.LIGHT_ALL] | bbs[Board.DARK_ALL];
+    int ownKing = BitBoard.bitScanForward(bbs[Board.KINGS | side]);
+    int enemyKing = BitBoard.bitScanForward(bbs[Board.KINGS | Piece.invertSide(side)]);
+    for (long passed = pawnTable.getPassed(slot, side); BitBoard.notEmpty(passed); passed = BitBoard.popLSB(passed)) {
+      int sq = BitBoard.bitScanForward(passed);
+      int rank = side == Piece.LIGHT ? sq >> 3 : 7 - (sq >> 3);
+      // Passed pawns never stand on the last rank, so [stop] is on the board
+      int stop = side == Piece.LIGHT ? sq + 8 : sq - 8;
+      if (BitBoard.get(occupied, stop)) score -= PASSED_BONUS[rank] / 2;
+      int weight = Math.max(rank - 2, 0);
+      int race = ENEMY_KING_DISTANCE_BONUS * distance(enemyKing, stop) - OWN_KING_DISTANCE_PENALTY * distance(ownKing, stop);
+      score += taper(0, race * weight, phase);
+    }
+    return score;
+  }
+
+  public int evaluate(Board board) {
+    long[] bbs = board.getBoards();
+    int material = MaterialTable.probe(board.getMaterialKey());
+    int phase = MaterialTable.phase(material);
+    int pawns = pawnSlot(board);
+    int score = MaterialTable.score(material) + pawnTable.getScore(pawns)
+      + pawnTerms(bbs, pawns, Piece.LIGHT, phase) - pawnTerms(bbs, pawns, Piece.DARK, phase)
+      + sideScore(bbs, Piece.LIGHT, phase) - sideScore(bbs, Piece.DARK, phase);
+    score = score * MaterialTable.scale(material, score > 0 ? Piece.LIGHT : Piece.DARK) / MaterialTable.FULL_SCALE;
+    return board.getPlySide() == Piece.LIGHT ? score : -score;
+  }
+}
@@ -0,0 +1,163 @@
+package jcheese.ai;
+
+import java.io.*;
+import jcheese.*;
+
+/* [Design Note]
+ * Material evaluation by table lookup, indexed by the piece counts of [Board.getMaterialKey]
+ * Every mix of up to 8 pawns, 2 knights, 2 bishops, 2 rooks and 1 queen per side has an entry
+ *  ... Mixes beyond that, after underpromotions or a second queen, are computed when asked
+ * An entry packs, from the light side's view:
+ *   b[0:15] -> material score, the piece values plus the imbalance terms, signed
+ *   b[16:20] -> game phase, from [MAX_PHASE] with every piece on the board down to 0
+ *   b[21:25] -> scale of a light advantage, out of [FULL_SCALE]
+ *   b[26:30] -> scale of a dark advantage, out of [FULL_SCALE]
+ * The imbalance terms are the bishop pair, knights gaining and rooks losing value with more own
+ *  ... pawns, and a redundant rook pair
+ * A side without pawns cannot win with less than a rook more, as with a lone minor piece
+ * The table is built when the class loads, or read from [RESOURCE] next to this class if
+ *  ... present. [save] writes that resource
+ */
+public class MaterialTable {
+  public static final String RESOURCE = "material.bin";
+  public static final int MAX_PHASE = 24;
+  public static final int FULL_SCALE = 16;
+
+  // Counts covered by the table, indexed by [Piece.kindIndex]
+  private static final int[] MAX_COUNTS = { 8, 2, 2, 2, 1, 1 };
+  // Phase weights indexed by [Piece.kindIndex]
+  private static final int[] PHASE_WEIGHTS = { 0, 2, 1, 1, 4, 0 };
+  private static final int BISHOP_PAIR = 30;
+  private static final int KNIGHT_PER_PAWN = 6;
+  private static final int ROOK_PER_PAWN = 12;
+  private static final int ROOK_PAIR = 10;
+
+  // Kinds in the order of the index digits, the least significant last
+  private static final int[] INDEX_KINDS = { Piece.PAWN, Piece.KNIGHT, Piece.BISHOP, Piece.ROOK, Piece.QUEEN };
+  private static final int SIDE_SIZE;
+  private static final int[] entries;
+
+  static {
+    int size = 1;
+    for (final int kind : INDEX_KINDS) size *= MAX_COUNTS[Piece.kindIndex(kind)] + 1;
+    SIDE_SIZE = size;
+    int[] loaded = load();
+    entries = loaded != null ? loaded : build();
+  }
+
+  private MaterialTable() {} // Not instantiable
+
+  public static int score(int entry) { return (short) entry; }
+  public static int phase(int entry) { return (entry >>> 16) & 0x1F; }
+  public static int scale(int entry, int side) { return (entry >>> (side == Piece.LIGHT ? 21 : 26)) & 0x1F; }
+
+  // Returns the entry of the material of [materialKey]
+  public static int probe(long materialKey) {
+    int light = sideIndex(materialKey, Piece.LIGHT);
+    int dark = sideIndex(materialKey, Piece.DARK);
+    if (light < 0 || dark < 0) return compute(materialKey);
+    return entries[light * SIDE_SIZE + dark];
+  }
+
+  // -1 if a count is beyond the table
+  private static int sideIndex(long materialKey, int side) {
+    int index = 0;
+    for (final int kind : INDEX_KINDS) {
+      int max = MAX_COUNTS[Piece.kindIndex(kind)];
+      int count = Board.materialCount(materialKey, kind | side);
+      if (count > max) return -1;
+      index = index * (max + 1) + count;
+    }
+    return index;
+  }
+
+  private static int[] build() {
+    int[] table = new int[SIDE_SIZE * SIDE_SIZE];
+    for (int light = 0; light < SIDE_SIZE; ++light) {
+      for (int dark = 0; dark < SIDE_SIZE; ++dark) {
+        table[light * SIDE_SIZE + dark] = compute(materialKey(light, Piece.LIGHT) | materialKey(dark, Piece.DARK));
+      }
+    }
+    return table;
+  }
+
+  // The inverse of [sideIndex]
+  private static long materialKey(int index, int side) {
+    long key = 0L;
+    for (int i = INDEX_KINDS.length - 1; i >= 0; --i) {
+      int base = MAX_COUNTS[Piece.kindIndex(INDEX_KINDS[i])] + 1;
+      key |= (long) (index % base) << Board.materialShift(INDEX_KINDS[i] | side);
+      index /= base;
+    }
+    return key;
+  }
+
+  private static int sideScore(long materialKey, int side) {
+    int pawns = Board.materialCount(materialKey, Piece.PAWN | side);
+    int knights = Board.materialCount(materialKey, Piece.KNIGHT | side);
+    int bishops = Board.materialCount(materialKey, Piece.BISHOP | side);
+    int rooks = Board.materialCount(materialKey, Piece.ROOK | side);
+    int queens = Board.materialCount(materialKey, Piece.QUEEN | side);
+    int score = pawns * SEE.value(Piece.PAWN) + knights * SEE.value(Piece.KNIGHT)
+      + bishops * SEE.value(Piece.BISHOP) + rooks * SEE.value(Piece.ROOK) + queens * SEE.value(Piece.QUEEN);
+    if (bishops >= 2) score += BISHOP_PAIR;
+    score += knights * KNIGHT_PER_PAWN * (pawns - 5);
+    score -= rooks * ROOK_PER_PAWN * (pawns - 5);
+    if (rooks >= 2) score -= ROOK_PAIR;
+    return score;
+  }
+
+  // Material other than pawns and kings
+  private static int pieceMaterial(long materialKey, int side) {
+    int material = 0;
+    for (final int kind : INDEX_KINDS) {
+      if (kind != Piece.PAWN) material += Board.materialCount(materialKey, kind | side) * SEE.value(kind);
+    }
+    return material;
+  }
+
+  private static int sideScale(long materialKey, int side) {
+    if (Board.materialCount(materialKey, Piece.PAWN | side) > 0) return FULL_SCALE;
+    int own = pieceMaterial(materialKey, side);
+    int lead = own - pieceMaterial(materialKey, Piece.invertSide(side));
+    if (lead >= SEE.value(Piece.ROOK)) return FULL_SCALE;
+    // A lone minor piece cannot mate. Otherwise the win is hard without pawns
+    return own <= SEE.value(Piece.BISHOP) ? 0 : FULL_SCALE / 4;
+  }
+
+  private static int compute(long materialKey) {
+    int score = sideScore(materialKey, Piece.LIGHT) - sideScore(materialKey, Piece.DARK);
+    int phase = 0;
+    for (final int kind : INDEX_KINDS) {
+      int count = Board.materialCount(materialKey, kind | Piece.LIGHT) + Board.materialCount(materialKey, kind | Piece.DARK);
+      phase += count * PHASE_WEIGHTS[Piece.kindIndex(kind)];
+    }
+    phase = Math.min(phase, MAX_PHASE);
+    return (score & 0xFFFF)
+      | phase << 16
+      | sideScale(materialKey, Piece.LIGHT) << 21
+      | sideScale(materialKey, Piece.DARK) << 26;
+  }
+
+  // Null if the resource is missing or does not fit the table
+  private static int[] load() {
+    try (InputStream in = MaterialTable.class.getResourceAsStream(RESOURCE)) {
+      if (in == null) return null;
+      DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+      if (data.readInt() != SIDE_SIZE) return null;
+      int[] table = new int[SIDE_SIZE * SIDE_SIZE];
+      for (int i = 0; i < table.length; ++i) table[i] = data.readInt();
+      return table;
+    } catch (IOException exc) {
+      return null;
+    }
+  }
+
+  // Writes the table in the format of [RESOURCE]
+  public static void save(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(SIDE_SIZE);
+    for (final int entry : entries) data.writeInt(entry);
+    data.flush();
+  }
+}
@@ -0,0 +1,76 @@
+package jcheese.ai;
+
+import jcheese.Piece;
+
+/* [Design Note]
+ * A cache of pawn structure evaluations keyed by [Board.getPawnKey]
+ * The entries are spread over parallel primitive arrays, indexed by [slot]:
+ *   keys[slot] -> pawn key
+ *   scores[slot] -> passed pawn rank bonus, from the light side's view
+ *   passed[2 * slot + side] -> passed pawns of [side]
+ *   counts[slot] -> isolated and doubled pawn counts, a byte each, at [countShift]
+ * A slot is always replaced. An empty slot reads as a position without pawns, which holds
+ *  ... since the pawn key of no pawns is zero and so are its score, masks and counts
+ * Not thread safe. Each search thread owns its table through its [Evaluator]
+ */
+public class PawnTable {
+  public static final int ISOLATED = 0;
+  public static final int DOUBLED = 1;
+
+  private final long[] keys;
+  private final int[] scores;
+  private final long[] passed;
+  private final int[] counts;
+  private final int mask;
+  private long probes;
+  private long hits;
+
+  // [entries] is rounded down to a power of two
+  public PawnTable(int entries) {
+    if (entries < 1) throw new IllegalArgumentException("Must have at least one entry");
+    int size = Integer.highestOneBit(entries);
+    keys = new long[size];
+    scores = new int[size];
+    passed = new long[Piece.SIDE_COUNT * size];
+    counts = new int[size];
+    mask = size - 1;
+  }
+
+  private static int countShift(int term, int side) { return 8 * (2 * term + side); }
+
+  // Returns the slot of [pawnKey] or -1 if it is not in the table
+  public int probe(long pawnKey) {
+    ++probes;
+    int slot = (int) pawnKey & mask;
+    if (keys[slot] != pawnKey) return -1;
+    ++hits;
+    return slot;
+  }
+
+  // Returns the slot written to
+  public int store(long pawnKey, int score, long lightPassed, long darkPassed, int lightIsolated, int darkIsolated,
+      int lightDoubled, int darkDoubled) {
+    int slot = (int) pawnKey & mask;
+    keys[slot] = pawnKey;
+    scores[slot] = score;
+    passed[2 * slot + Piece.LIGHT] = lightPassed;
+    passed[2 * slot + Piece.DARK] = darkPassed;
+    counts[slot] = lightIsolated << countShift(ISOLATED, Piece.LIGHT)
+      | darkIsolated << countShift(ISOLATED, Piece.DARK)
+      | lightDoubled << countShift(DOUBLED, Piece.LIGHT)
+      | darkDoubled << countShift(DOUBLED, Piece.DARK);
+    return slot;
+  }
+
+  public int getScore(int slot) { return scores[slot]; }
+  public long getPassed(int slot, int side) { return passed[2 * slot + side]; }
+  // [term] is [ISOLATED] or [DOUBLED]
+  public int getCount(int slot, int term, int side) { return (counts[slot] >>> countShift(term, side)) & 0xFF; }
+
+  public long getProbes() { return probes; }
+  public long getHits() { return hits; }
+  public void resetCounters() {
+    probes = 0;
+    hits = 0;
+  }
+}
@@ -22,6 +22,12 @@ public class RandomController implements IController {
     assert !legalMoves.isEmpty();
     return legalMoves.get(randomDevice.nextInt(legalMoves.size()));
   }
+  
+  @Override
+  public int getMove(MoveList legalMoves) {
+    assert !legalMoves.isEmpty();
+    return legalMoves.get(randomDevice.nextInt(legalMoves.size()));
+  }
 
   @Override
   public void illegalMove(int move) {
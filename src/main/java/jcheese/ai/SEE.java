@@ -0,0 +1,92 @@
+package jcheese.ai;
+
+import jcheese.*;
+import jcheese.util.BitBoard;
+
+/* [Design Note]
+ * Static Exchange Evaluation resolves the full sequence of captures on the destination of a move
+ * Both sides recapture with their least valuable attacker, and either side may stop when
+ *  ... continuing would lose material. The result is the material balance for the side moving
+ * No move is made. The exchange is played on a local occupancy only, and the attackers are
+ *  ... looked up again after each capture so sliders behind the capturer (x-rays) join in
+ * Pins are ignored, as usual for SEE
+ * An instance owns its scratch swap list. Keep one per search thread
+ */
+public class SEE {
+  // Piece values indexed by [Piece.kindIndex]
+  public static final int[] VALUES = { 100, 500, 320, 330, 900, 20000 };
+  // Kinds in the order of the least valuable attacker first
+  private static final int[] ATTACKER_ORDER = {
+    Piece.PAWN, Piece.KNIGHT, Piece.BISHOP, Piece.ROOK, Piece.QUEEN, Piece.KING
+  };
+  // Every piece on the board can take part in an exchange at most once
+  private final int[] gains = new int[32 + 1];
+
+  public static int value(int kind) { return VALUES[Piece.kindIndex(kind)]; }
+
+  // The material won (or lost if negative) by [move] after the exchange on its destination
+  public int evaluate(Board board, int move) {
+    if (Move.isCastle(move)) return 0;
+
+    long[] bbs = board.getBoards();
+    int src = Move.getSrc(move);
+    int dst = Move.getDst(move);
+    int side = Piece.side(board.getPiece(src));
+    int attackerKind = Piece.kind(board.getPiece(src));
+    long occupancy = bbs[Board.LIGHT_ALL] | bbs[Board.DARK_ALL];
+
+    int gain = 0;
+    if (Move.isCapture(move)) {
+      gain = value(Piece.kind(board.getPiece(dst)));
+    } else if (Move.isEnPassant(move)) {
+      gain = value(Piece.PAWN);
+      occupancy = BitBoard.clear(occupancy, Move.getOtherSquare(move));
+    }
+    if (Move.isPromote(move)) {
+      attackerKind = Move.getPromoteKind(move);
+      gain += value(attackerKind) - value(Piece.PAWN);
+    }
+
+    int depth = 0;
+    gains[0] = gain;
+    occupancy = BitBoard.clear(occupancy, src);
+    long attackers = MoveGenerator.attackersTo(board, dst, occupancy) & occupancy;
+
+    for (;;) {
+      side = Piece.invertSide(side);
+      long sideAttackers = attackers & bbs[Board.ALL | side];
+      if (BitBoard.isEmpty(sideAttackers)) break;
+
+      int kind = Piece.NONE;
+      long attackerBit = BitBoard.allClear();
+      for (final int candidate : ATTACKER_ORDER) {
+        attackerBit = BitBoard.extractLowest(sideAttackers & bbs[candidate | side]);
+        if (BitBoard.notEmpty(attackerBit)) {
+          kind = candidate;
+          break;
+        }
+      }
+      // The king cannot recapture into a defended square
+      if (kind == Piece.KING && BitBoard.notEmpty(attackers & bbs[Board.ALL | Piece.invertSide(side)])) break;
+
+      ++depth;
+      // The balance for [side] if it captures the piece standing on [dst] and the exchange ends
+      gains[depth] = value(attackerKind) - gains[depth - 1];
+
+      attackerKind = kind;
+      occupancy &= ~attackerBit;
+      attackers = MoveGenerator.attackersTo(board, dst, occupancy) & occupancy;
+    }
+
+    // Negamax the swap list back to the first capture. Either side may stand pat
+    while (depth > 0) {
+      gains[depth - 1] = -Math.max(-gains[depth - 1], gains[depth]);
+      --depth;
+    }
+    return gains[0];
+  }
+
+  public boolean isAtLeast(Board board, int move, int threshold) {
+    return evaluate(board, move) >= threshold;
+  }
+}
@@ -0,0 +1,735 @@
+package jcheese.ai;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jcheese.*;
+
+/* [Design Note]
+ * Negamax alpha-beta with iterative deepening
+ * Every node reuses its preallocated [MovePicker] and the moves are made and unmade on [board],
+ *  ... so a search does not allocate
+ * A search stops at the depth, node or time limit, whichever comes first, or when its thread
+ *  ... is interrupted. The result of the last completed iteration is kept
+ */
+public class Search {
+  public static final int MAX_PLY = 128;
+  public static final int INFINITY = 32000;
+  public static final int MATE = 31000;
+  // Scores beyond this are mates, the distance to mate in plies is [MATE - |score|]
+  public static final int MATE_BOUND = MATE - MAX_PLY;
+  // How many nodes are searched between two limit checks
+  // Short enough to stop within a millisecond or so, for games with fast time controls
+  private static final int CHECK_INTERVAL = 256;
+  // Positional slack for delta pruning, in centipawns
+  private static final int DELTA_MARGIN = 200;
+  private static final int HISTORY_MAX = 16384;
+  private static final int ASPIRATION_DEPTH = 4;
+  private static final int DEFAULT_ASPIRATION_WINDOW = 25;
+  // Lazy SMP iteration skipping, indexed by helper number. Helper [n] searches [SKIP_SIZE[n]]
+  //  ... depths in a row then skips as many, shifted by [SKIP_PHASE[n]] depths
+  private static final int[] SKIP_SIZE = { 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4 };
+  private static final int[] SKIP_PHASE = { 0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7 };
+  // Selective pruning margins and depths
+  private static final int REVERSE_FUTILITY_DEPTH = 6;
+  private static final int REVERSE_FUTILITY_MARGIN = 80;
+  private static final int NULL_MOVE_DEPTH = 3;
+  private static final int FUTILITY_DEPTH = 3;
+  private static final int FUTILITY_MARGIN = 120;
+  private static final int LMR_DEPTH = 3;
+  private static final int LMR_MOVES = 3;
+  // Selective pruning techniques, as indexed by [measureSavings]
+  public static final int NULL_MOVE = 0;
+  public static final int LATE_MOVE_REDUCTIONS = 1;
+  public static final int REVERSE_FUTILITY = 2;
+  public static final int FUTILITY = 3;
+  public static final int TECHNIQUE_COUNT = 4;
+  // Late move reductions indexed by depth then move number
+  private static final int[][] lmrTable = new int[MAX_PLY][MoveList.MAX_MOVES];
+  static {
+    for (int depth = 1; depth < MAX_PLY; ++depth) {
+      for (int moves = 1; moves < MoveList.MAX_MOVES; ++moves) {
+        lmrTable[depth][moves] = (int) (0.75 + Math.log(depth) * Math.log(moves) / 2.25);
+      }
+    }
+  }
+
+  private final Board board = new Board();
+  private final Evaluator evaluator = new Evaluator();
+  private final SEE see = new SEE();
+  private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+  private final int[][] pvTable = new int[MAX_PLY][MAX_PLY];
+  private final int[] pvLength = new int[MAX_PLY];
+  private final int[] lastPv = new int[MAX_PLY];
+  private int lastPvLength;
+  private boolean followPv;
+
+  // Move ordering. [killers] holds two per ply, the others are indexed by [MovePicker.butterflyIndex]
+  private final int[] killers = new int[MAX_PLY * 2];
+  private final int[] history = new int[MovePicker.BUTTERFLY_SIZE];
+  private final int[] counterMoves = new int[MovePicker.BUTTERFLY_SIZE];
+  // The move made at each ply, whose countermove is looked up one ply deeper
+  private final int[] playedMoves = new int[MAX_PLY];
+  private final MoveList[] quietsSearched = MoveList.newStack(MAX_PLY);
+  private TranspositionTable table;
+
+  // Lazy SMP. Empty with a single thread
+  private Search[] helpers = new Search[0];
+  private ExecutorService pool;
+  // -1 for the main search, the helper number for a helper
+  private int helperIndex = -1;
+  // Helpers told to stop that may not have ended yet
+  private Future<?>[] running = new Future<?>[0];
+  // [nodes] of a helper as last seen from other threads
+  private volatile long publishedNodes;
+  private volatile long publishedQNodes;
+
+  private int aspirationWindow = DEFAULT_ASPIRATION_WINDOW;
+  // Selective pruning switches
+  private boolean nullMovePruning = true;
+  private boolean lateMoveReductions = true;
+  private boolean reverseFutilityPruning = true;
+  private boolean futilityPruning = true;
+
+  // Limits. Zero means no limit
+  private int depthLimit;
+  private long nodeLimit;
+  // Volatile, [limitTimeNanos] may set them while searching
+  private volatile long timeLimitNanos;
+  private volatile long deadline;
+  private volatile boolean stopped;
+
+  // Results
+  private long nodes;
+  // Part of [nodes] searched by quiescence
+  private long qnodes;
+  // Zero window searches searched again with the full window
+  private long researches;
+  // Beta cutoffs of the main search, and how many of them came from the first move
+  private long cutoffs;
+  private long firstMoveCutoffs;
+  // Selective pruning counters of the main search
+  private long nullMoveCutoffs;
+  private long reverseFutilityCutoffs;
+  private long futilityPrunes;
+  private long lateMoveReductionsKept;
+  // Statistics of the last iteration
+  private int iterationFailHighs;
+  private int iterationFailLows;
+  private long iterationResearches;
+  private long iterationNanos;
+  private int completedDepth;
+  private int bestMove;
+  private int bestScore;
+  private PrintStream info;
+
+  public Search() {
+    for (int i = 0; i < pickers.length; ++i) pickers[i] = new MovePicker();
+  }
+
+  public Search setDepthLimit(int depth) {
+    depthLimit = depth;
+    return this;
+  }
+  public Search setNodeLimit(long nodes) {
+    nodeLimit = nodes;
+    return this;
+  }
+  public Search setTimeLimit(long millis) { return setTimeLimitNanos(millis * 1_000_000L); }
+  public Search setTimeLimitNanos(long nanos) {
+    timeLimitNanos = nanos;
+    return this;
+  }
+  // The half width of the first window of an iteration in centipawns. Zero for a full window
+  public Search setAspirationWindow(int centipawns) {
+    if (centipawns < 0) throw new IllegalArgumentException("The window cannot be negative");
+    aspirationWindow = centipawns;
+    return this;
+  }
+  public Search setNullMovePruning(boolean enabled) {
+    nullMovePruning = enabled;
+    return this;
+  }
+  public Search setLateMoveReductions(boolean enabled) {
+    lateMoveReductions = enabled;
+    return this;
+  }
+  public Search setReverseFutilityPruning(boolean enabled) {
+    reverseFutilityPruning = enabled;
+    return this;
+  }
+  public Search setFutilityPruning(boolean enabled) {
+    futilityPruning = enabled;
+    return this;
+  }
+  // The table may be shared with other searches. Pass null to search without one
+  public Search setTable(TranspositionTable table) {
+    this.table = table;
+    for (final Search helper : helpers) helper.table = table;
+    return this;
+  }
+  // The number of threads searching, the calling thread included
+  public Search setThreads(int threads) {
+    if (threads < 1) throw new IllegalArgumentException("Must have at least one thread");
+    if (threads == helpers.length + 1) return this;
+    shutdown();
+    helpers = new Search[threads - 1];
+    for (int i = 0; i < helpers.length; ++i) {
+      helpers[i] = new Search().setTable(table);
+      helpers[i].helperIndex = i;
+    }
+    if (helpers.length > 0) {
+      pool = Executors.newFixedThreadPool(helpers.length, runnable -> {
+        Thread thread = new Thread(runnable, "search-helper");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return this;
+  }
+  public int getThreads() { return helpers.length + 1; }
+
+  // Ends the helper threads. The search falls back to a single thread
+  public void shutdown() {
+    if (pool != null) pool.shutdownNow();
+    pool = null;
+    running = new Future<?>[0];
+    helpers = new Search[0];
+  }
+  // Prints a line per completed iteration. Pass null to be silent
+  public Search setInfoStream(PrintStream info) {
+    this.info = info;
+    return this;
+  }
+
+  // Gives a running search [nanos] from now, e.g. a pondering search on a ponder hit
+  // Safe to call from another thread
+  public void limitTimeNanos(long nanos) {
+    // The deadline first. A search seeing the new limit also sees the new deadline
+    deadline = System.nanoTime() + nanos;
+    timeLimitNanos = nanos;
+  }
+
+  // Asks a running search to stop as soon as possible. Safe to call from another thread
+  public void stop() {
+    stopped = true;
+    for (final Search helper : helpers) helper.stopped = true;
+  }
+
+  // The nodes of every thread
+  public long getNodes() {
+    long total = nodes;
+    for (final Search helper : helpers) total += helper.publishedNodes;
+    return total;
+  }
+  public long getQNodes() {
+    long total = qnodes;
+    for (final Search helper : helpers) total += helper.publishedQNodes;
+    return total;
+  }
+  public long getCutoffs() { return cutoffs; }
+  public long getFirstMoveCutoffs() { return firstMoveCutoffs; }
+  public long getNullMoveCutoffs() { return nullMoveCutoffs; }
+  public long getReverseFutilityCutoffs() { return reverseFutilityCutoffs; }
+  public long getFutilityPrunes() { return futilityPrunes; }
+  // Reduced searches that did not beat alpha, so were not searched again
+  public long getLateMoveReductions() { return lateMoveReductionsKept; }
+  // Root searches again after the aspiration window failed, in the last completed iteration
+  public int getIterationFailHighs() { return iterationFailHighs; }
+  public int getIterationFailLows() { return iterationFailLows; }
+  // Zero window searches of the last completed iteration searched again with the full window
+  public long getIterationResearches() { return iterationResearches; }
+  public long getIterationNanos() { return iterationNanos; }
+  public int getCompletedDepth() { return completedDepth; }
+  public int getBestMove() { return bestMove; }
+  public int getBestScore() { return bestScore; }
+  public int getPvLength() { return lastPvLength; }
+  public int getPvMove(int ply) { return lastPv[ply]; }
+  public TranspositionTable getTable() { return table; }
+  public Evaluator getEvaluator() { return evaluator; }
+
+  // The nodes each technique saves when searching [positions] to [depth], indexed as [NULL_MOVE]
+  //  ... and so on. That is the nodes searched with the technique off and the others on, minus
+  //  ... the nodes searched with every technique on. Negative if the technique costs nodes
+  // Every search is single threaded with a fresh table of [hashMB], so the counts are repeatable
+  public static long[] measureSavings(Board[] positions, int depth, int hashMB) {
+    long[] saved = new long[TECHNIQUE_COUNT];
+    for (final Board position : positions) {
+      long all = countNodes(position, depth, hashMB, -1);
+      for (int technique = 0; technique < TECHNIQUE_COUNT; ++technique) {
+        saved[technique] += countNodes(position, depth, hashMB, technique) - all;
+      }
+    }
+    return saved;
+  }
+
+  // The nodes of a search to [depth] with every technique on but [off]
+  private static long countNodes(Board position, int depth, int hashMB, int off) {
+    Search search = new Search()
+      .setDepthLimit(depth)
+      .setTable(new TranspositionTable(hashMB))
+      .setNullMovePruning(off != NULL_MOVE)
+      .setLateMoveReductions(off != LATE_MOVE_REDUCTIONS)
+      .setReverseFutilityPruning(off != REVERSE_FUTILITY)
+      .setFutilityPruning(off != FUTILITY);
+    search.search(position);
+    return search.getNodes();
+  }
+
+  private boolean limitReached() {
+    if (nodeLimit != 0 && nodes >= nodeLimit) return true;
+    if (Thread.currentThread().isInterrupted()) return true;
+    return timeLimitNanos != 0 && System.nanoTime() - deadline >= 0;
+  }
+
+  private void reset(Board root) {
+    board.copyFrom(root);
+    stopped = false;
+    nodes = 0;
+    qnodes = 0;
+    researches = 0;
+    publishedNodes = 0;
+    publishedQNodes = 0;
+    completedDepth = 0;
+    lastPvLength = 0;
+    bestScore = 0;
+    cutoffs = 0;
+    firstMoveCutoffs = 0;
+    nullMoveCutoffs = 0;
+    reverseFutilityCutoffs = 0;
+    futilityPrunes = 0;
+    lateMoveReductionsKept = 0;
+    Arrays.fill(killers, MovePicker.NO_MOVE);
+    evaluator.getPawnTable().resetCounters();
+    for (int i = 0; i < history.length; ++i) history[i] >>= 1;
+  }
+
+  /* [Design Note]
+   * With more than one thread the search is Lazy SMP. Helper searches run the same root on their
+   *  ... own threads and share nothing but the table. Each owns its board, pickers and tables
+   * The main search runs on the calling thread, decides the move and stops the helpers
+   *  ... It returns without waiting for them to end, which may take a few scheduler time slices
+   *  ... when the cores are busy. The next search waits for them instead, by then long ended
+   * Helpers diverge so they do not just repeat the main search. Helper [n] skips iterations by
+   *  ... [SKIP_SIZE] and [SKIP_PHASE] and widens its aspiration window by a fifth per [n]
+   */
+  // Searches [root] and returns the best move, or [MovePicker.NO_MOVE] if there is no legal move
+  public int search(Board root) {
+    awaitHelpers();
+    long start = System.nanoTime();
+    deadline = start + timeLimitNanos;
+    if (table != null) table.newSearch();
+    reset(root);
+
+    running = new Future<?>[helpers.length];
+    for (int i = 0; i < helpers.length; ++i) {
+      Search helper = helpers[i];
+      helper.reset(root);
+      helper.depthLimit = depthLimit;
+      helper.aspirationWindow = aspirationWindow * (5 + i + 1) / 5;
+      helper.nullMovePruning = nullMovePruning;
+      helper.lateMoveReductions = lateMoveReductions;
+      helper.reverseFutilityPruning = reverseFutilityPruning;
+      helper.futilityPruning = futilityPruning;
+      running[i] = pool.submit(() -> helper.iterate(start));
+    }
+
+    iterate(start);
+
+    for (final Search helper : helpers) helper.stopped = true;
+    return bestMove;
+  }
+
+  // Waits for the helpers of the last search, which are stopped already
+  private void awaitHelpers() {
+    boolean interrupted = false;
+    try {
+      for (final Future<?> helper : running) {
+        for (;;) {
+          try {
+            helper.get();
+            break;
+          } catch (InterruptedException e) {
+            // They share the table and counters with the next search, so wait anyway
+            interrupted = true;
+          } catch (ExecutionException e) {
+            throw new IllegalStateException("Search helper failed", e.getCause());
+          }
+        }
+      }
+    } finally {
+      running = new Future<?>[0];
+      if (interrupted) Thread.currentThread().interrupt();
+    }
+  }
+
+  /* [Design Note]
+   * From [ASPIRATION_DEPTH] on, an iteration first searches a window of [aspirationWindow] around
+   *  ... the last score. A score outside it moves the failing bound past the score, by a margin
+   *  ... doubled on each failure, and searches again. Zero turns aspiration off
+   * The principal variation is kept in a triangular table. [pvTable[ply]] holds the best line
+   *  ... from [ply] onwards. The last iteration's PV is tried first at each node along it
+   */
+  // Iterative deepening until a limit is reached or the search is stopped
+  private void iterate(long start) {
+    // Any legal move, in case not even the first iteration completes
+    MovePicker rootPicker = pickers[0];
+    rootPicker.init(board);
+    bestMove = rootPicker.next();
+    if (bestMove == MovePicker.NO_MOVE) return;
+
+    int maxDepth = depthLimit > 0 ? Math.min(depthLimit, MAX_PLY - 1) : MAX_PLY - 1;
+    for (int depth = 1; depth <= maxDepth; ++depth) {
+      if (skipsDepth(depth)) continue;
+      long iterationStart = System.nanoTime();
+      int failHighs = 0;
+      int failLows = 0;
+      long researchesBefore = researches;
+
+      int delta = aspirationWindow;
+      int alpha = -INFINITY;
+      int beta = INFINITY;
+      if (delta > 0 && depth >= ASPIRATION_DEPTH && Math.abs(bestScore) < MATE_BOUND) {
+        alpha = Math.max(bestScore - delta, -INFINITY);
+        beta = Math.min(bestScore + delta, INFINITY);
+      }
+      int score;
+      for (;;) {
+        followPv = true;
+        score = alphaBeta(alpha, beta, depth, 0);
+        if (stopped) break;
+        if (score <= alpha && alpha > -INFINITY) {
+          ++failLows;
+          alpha = Math.max(score - delta, -INFINITY);
+        } else if (score >= beta && beta < INFINITY) {
+          ++failHighs;
+          beta = Math.min(score + delta, INFINITY);
+        } else {
+          break;
+        }
+        delta *= 2;
+      }
+      if (stopped) break;
+
+      iterationFailHighs = failHighs;
+      iterationFailLows = failLows;
+      iterationResearches = researches - researchesBefore;
+      iterationNanos = System.nanoTime() - iterationStart;
+      completedDepth = depth;
+      bestScore = score;
+      lastPvLength = pvLength[0];
+      System.arraycopy(pvTable[0], 0, lastPv, 0, lastPvLength);
+      if (lastPvLength > 0) bestMove = lastPv[0];
+      printInfo(start);
+
+      // A forced mate was found. Deeper iterations will not find a shorter one
+      if (Math.abs(score) >= MATE_BOUND) break;
+      if (limitReached()) break;
+    }
+    publishedNodes = nodes;
+    publishedQNodes = qnodes;
+  }
+
+  private boolean skipsDepth(int depth) {
+    if (helperIndex < 0) return false;
+    int n = helperIndex % SKIP_SIZE.length;
+    return (depth + SKIP_PHASE[n]) / SKIP_SIZE[n] % 2 != 0;
+  }
+
+  // Counts a node and checks the limits every [CHECK_INTERVAL] nodes. True if stopped
+  private boolean countNode() {
+    if (++nodes % CHECK_INTERVAL == 0) {
+      publishedNodes = nodes;
+      publishedQNodes = qnodes;
+      if (limitReached()) stopped = true;
+    }
+    return stopped;
+  }
+
+  /* [Design Note]
+   * Principal variation search. The first move of a node is searched with the full window, the
+   *  ... others with a zero window first and again with the full window only if they beat alpha
+   * With a [TranspositionTable], every node stores its best move and score. A later visit at no
+   *  ... greater depth returns the stored score outside of PV nodes, and otherwise tries the
+   *  ... stored move first. Mate scores are stored relative to the node, not the root
+   * Positions repeated since the root or from the game history before it are draws
+   * Zero window nodes out of check are pruned selectively, each technique switchable:
+   *   Reverse futility: near the leaves, an evaluation above beta by a margin per ply fails high
+   *   Null move: passing the turn and still failing high in a reduced search fails high. Skipped
+   *    ... without pieces other than pawns, where passing may be the best move (zugzwang)
+   *   Futility: near the leaves, quiet moves are skipped when the evaluation is far below alpha
+   *   Late move reductions: late quiet moves are searched shallower, by [lmrTable], and searched
+   *    ... again at full depth if they beat alpha. PV nodes reduce one ply less
+   * The counters hold how often each technique cut a subtree or searched one shallower. The nodes
+   *  ... a technique saves are measured apart by [measureSavings]
+   */
+  private int alphaBeta(int alpha, int beta, int depth, int ply) {
+    if (depth <= 0) return quiescence(alpha, beta, ply, 0);
+    pvLength[ply] = 0;
+    if (countNode()) return 0;
+    if (ply >= MAX_PLY - 1) return evaluator.evaluate(board);
+    // A repetition inside the tree is scored as a draw at once, the first repetition is enough
+    if (ply > 0 && (board.getHalfMoveClock() >= 100 || board.isRepetition())) return 0;
+
+    long key = board.getZobrist();
+    int hashMove = MovePicker.NO_MOVE;
+    long entry = table != null ? table.probe(key) : 0L;
+    if (entry != 0L) {
+      hashMove = TranspositionTable.move(entry);
+      // Zero window nodes trust a deep enough entry. PV nodes search on to keep their line whole
+      if (ply > 0 && beta - alpha == 1 && TranspositionTable.depth(entry) >= depth) {
+        int score = scoreFromTable(TranspositionTable.score(entry), ply);
+        int bound = TranspositionTable.bound(entry);
+        if (bound == TranspositionTable.BOUND_EXACT
+            || (bound == TranspositionTable.BOUND_LOWER && score >= beta)
+            || (bound == TranspositionTable.BOUND_UPPER && score <= alpha)) return score;
+      }
+    }
+
+    if (followPv) {
+      if (ply < lastPvLength) hashMove = lastPv[ply];
+      else followPv = false;
+    }
+    int side = board.getPlySide();
+    int counterMove = ply > 0
+      ? counterMoves[MovePicker.butterflyIndex(Piece.invertSide(side), playedMoves[ply - 1])]
+      : MovePicker.NO_MOVE;
+    MovePicker picker = pickers[ply];
+    picker.init(board, hashMove, killers[2 * ply], killers[2 * ply + 1], counterMove, history);
+    MoveList quiets = quietsSearched[ply];
+    quiets.clear();
+
+    boolean inCheck = picker.isChecked();
+    boolean pruning = beta - alpha == 1 && !inCheck;
+    int staticEval = pruning ? evaluator.evaluate(board) : -INFINITY;
+
+    if (pruning && reverseFutilityPruning && depth <= REVERSE_FUTILITY_DEPTH && Math.abs(beta) < MATE_BOUND
+        && staticEval - REVERSE_FUTILITY_MARGIN * depth >= beta) {
+      ++reverseFutilityCutoffs;
+      return staticEval;
+    }
+
+    // Never two null moves in a row, that would only search the same position shallower
+    if (pruning && nullMovePruning && ply > 0 && depth >= NULL_MOVE_DEPTH && staticEval >= beta
+        && playedMoves[ply - 1] != MovePicker.NO_MOVE && hasPieces(side)) {
+      int reduction = 2 + depth / 4;
+      followPv = false;
+      playedMoves[ply] = MovePicker.NO_MOVE;
+      board.makeNullMove();
+      int score = -alphaBeta(-beta, -beta + 1, depth - 1 - reduction, ply + 1);
+      board.unmakeNullMove();
+      if (stopped) return 0;
+      if (score >= beta) {
+        ++nullMoveCutoffs;
+        // A mate found after passing is not proven
+        return score >= MATE_BOUND ? beta : score;
+      }
+    }
+    boolean futile = pruning && futilityPruning && depth <= FUTILITY_DEPTH
+      && staticEval + FUTILITY_MARGIN * depth <= alpha;
+
+    int alphaStart = alpha;
+    int best = -INFINITY;
+    int bestMove = MovePicker.NO_MOVE;
+    int moveCount = 0;
+    for (int move; (move = picker.next()) != MovePicker.NO_MOVE; ) {
+      // Only the first move of a node on the last PV continues along it
+      if (moveCount > 0) followPv = false;
+      boolean quiet = isQuiet(move);
+      if (futile && moveCount > 0 && quiet) {
+        ++futilityPrunes;
+        continue;
+      }
+
+      playedMoves[ply] = move;
+      board.applyMove(move);
+      int score;
+      if (moveCount == 0) {
+        score = -alphaBeta(-beta, -alpha, depth - 1, ply + 1);
+      } else {
+        int reduction = 0;
+        if (lateMoveReductions && depth >= LMR_DEPTH && moveCount >= LMR_MOVES && quiet && !inCheck
+            && !MoveGenerator.isKingAttacked(board, board.getPlySide())) {
+          reduction = lmrTable[depth][moveCount] - (beta - alpha > 1 ? 1 : 0);
+          reduction = Math.max(0, Math.min(reduction, depth - 2));
+        }
+        score = -alphaBeta(-alpha - 1, -alpha, depth - 1 - reduction, ply + 1);
+        if (reduction > 0) {
+          if (score > alpha) score = -alphaBeta(-alpha - 1, -alpha, depth - 1, ply + 1);
+          else ++lateMoveReductionsKept;
+        }
+        if (score > alpha && score < beta) {
+          ++researches;
+          score = -alphaBeta(-beta, -alpha, depth - 1, ply + 1);
+        }
+      }
+      board.unmakeMove(move);
+      ++moveCount;
+      if (stopped) return 0;
+
+      if (score > best) {
+        best = score;
+        bestMove = move;
+        if (score > alpha) {
+          alpha = score;
+          // The line of this node is [move] followed by the line of the child
+          pvTable[ply][ply] = move;
+          System.arraycopy(pvTable[ply + 1], ply + 1, pvTable[ply], ply + 1, pvLength[ply + 1]);
+          pvLength[ply] = pvLength[ply + 1] + 1;
+          if (score >= beta) {
+            ++cutoffs;
+            if (moveCount == 1) ++firstMoveCutoffs;
+            if (quiet) updateQuietOrdering(move, quiets, depth, ply, side);
+            break;
+          }
+        }
+      }
+      if (quiet) quiets.add(move);
+    }
+
+    if (moveCount == 0) {
+      // Checkmated or stalemated. Prefer the shorter mates
+      return picker.isChecked() ? -MATE + ply : 0;
+    }
+    if (table != null) {
+      int bound = best >= beta ? TranspositionTable.BOUND_LOWER
+        : best > alphaStart ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+      // A fail low has no best move worth trying first
+      if (bound == TranspositionTable.BOUND_UPPER) bestMove = MovePicker.NO_MOVE;
+      table.store(key, bestMove, scoreToTable(best, ply), depth, bound);
+    }
+    return best;
+  }
+
+  /* [Design Note]
+   * Plays on the captures only, so the horizon falls on a quiet position. The side to move may
+   *  ... stand pat on the static evaluation. Captures that cannot raise alpha even with
+   *  ... [DELTA_MARGIN] to spare, or that lose material by SEE, are skipped
+   * The first ply searches every evasion when checked, so mates there are seen
+   */
+  private int quiescence(int alpha, int beta, int ply, int qply) {
+    pvLength[ply] = 0;
+    ++qnodes;
+    if (countNode()) return 0;
+    if (ply >= MAX_PLY - 1) return evaluator.evaluate(board);
+
+    MovePicker picker = pickers[ply];
+    picker.initQuiescence(board, qply == 0);
+    boolean evading = qply == 0 && picker.isChecked();
+
+    int best = -INFINITY;
+    if (!evading) {
+      best = evaluator.evaluate(board);
+      if (best >= beta) return best;
+      if (best > alpha) alpha = best;
+    }
+
+    int moveCount = 0;
+    for (int move; (move = picker.next()) != MovePicker.NO_MOVE; ) {
+      ++moveCount;
+      if (!evading) {
+        if (!Move.isPromote(move) && best + capturedValue(move) + DELTA_MARGIN <= alpha) continue;
+        if (see.evaluate(board, move) < 0) continue;
+      }
+
+      board.applyMove(move);
+      int score = -quiescence(-beta, -alpha, ply + 1, qply + 1);
+      board.unmakeMove(move);
+      if (stopped) return 0;
+
+      if (score > best) {
+        best = score;
+        if (score > alpha) {
+          alpha = score;
+          if (score >= beta) break;
+        }
+      }
+    }
+
+    if (evading && moveCount == 0) return -MATE + ply;
+    return best;
+  }
+
+  // Any piece other than pawns and the king
+  private boolean hasPieces(int side) {
+    long[] bbs = board.getBoards();
+    return (bbs[Board.ALL | side] ^ bbs[Board.PAWNS | side] ^ bbs[Board.KINGS | side]) != 0L;
+  }
+
+  private static boolean isQuiet(int move) {
+    return !Move.isCapture(move) && !Move.isEnPassant(move) && !Move.isPromote(move);
+  }
+
+  /* [Design Note]
+   * Quiet moves are ordered by killers (two per ply), the countermove of the previous move and
+   *  ... the butterfly history. A quiet move causing a cutoff becomes a killer and the countermove,
+   *  ... gains history, and the quiet moves searched before it lose history. History saturates
+   *  ... towards [HISTORY_MAX] and is halved between searches
+   */
+  private void updateQuietOrdering(int move, MoveList quiets, int depth, int ply, int side) {
+    if (killers[2 * ply] != move) {
+      killers[2 * ply + 1] = killers[2 * ply];
+      killers[2 * ply] = move;
+    }
+    if (ply > 0) counterMoves[MovePicker.butterflyIndex(Piece.invertSide(side), playedMoves[ply - 1])] = move;
+
+    int bonus = Math.min(depth * depth, 400);
+    addHistory(MovePicker.butterflyIndex(side, move), bonus);
+    for (int i = 0; i < quiets.size(); ++i) addHistory(MovePicker.butterflyIndex(side, quiets.get(i)), -bonus);
+  }
+
+  // Moves the entry towards +/-[HISTORY_MAX], by less the closer it already is
+  private void addHistory(int index, int bonus) {
+    history[index] += bonus - history[index] * Math.abs(bonus) / HISTORY_MAX;
+  }
+
+  private int capturedValue(int move) {
+    if (Move.isEnPassant(move)) return SEE.value(Piece.PAWN);
+    return SEE.value(Piece.kind(board.getPiece(Move.getDst(move))));
+  }
+
+  // Mate scores count plies from the root. The table counts them from the stored node instead
+  private static int scoreToTable(int score, int ply) {
+    if (score >= MATE_BOUND) return score + ply;
+    if (score <= -MATE_BOUND) return score - ply;
+    return score;
+  }
+  private static int scoreFromTable(int score, int ply) {
+    if (score >= MATE_BOUND) return score - ply;
+    if (score <= -MATE_BOUND) return score + ply;
+    return score;
+  }
+
+  private static long percent(long part, long whole) { return whole > 0 ? part * 100 / whole : 0; }
+
+  private void printInfo(long start) {
+    if (info == null) return;
+    PawnTable pawnTable = evaluator.getPawnTable();
+    long elapsed = Math.max(System.nanoTime() - start, 1);
+    StringBuilder sb = new StringBuilder();
+    sb.append("depth ").append(completedDepth);
+    if (Math.abs(bestScore) >= MATE_BOUND) {
+      int plies = MATE - Math.abs(bestScore);
+      sb.append(" score mate ").append(bestScore > 0 ? (plies + 1) / 2 : -(plies + 1) / 2);
+    } else {
+      sb.append(" score cp ").append(bestScore);
+    }
+    long totalNodes = getNodes();
+    sb.append(" nodes ").append(totalNodes)
+      .append(" qnodes ").append(getQNodes())
+      .append(" nps ").append(totalNodes * 1_000_000_000L / elapsed)
+      .append(" time ").append(elapsed / 1_000_000L)
+      .append(" itime ").append(iterationNanos / 1_000_000L)
+      .append(" fh ").append(iterationFailHighs)
+      .append(" fl ").append(iterationFailLows)
+      .append(" researches ").append(iterationResearches)
+      .append(" fmc ").append(percent(firstMoveCutoffs, cutoffs)).append('%')
+      .append(" pawnhits ").append(percent(pawnTable.getHits(), pawnTable.getProbes())).append('%')
+      .append(" pv");
+    for (int i = 0; i < lastPvLength; ++i) sb.append(' ').append(Move.getSSAN(lastPv[i]));
+    info.println(sb);
+  }
+}
@@ -0,0 +1,138 @@
+package jcheese.ai;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/* [Design Note]
+ * A transposition table stored off-heap in direct ByteBuffers, keyed by [Board.getZobrist]
+ * The table is split into buckets of [BUCKET_ENTRIES] entries, one 64-byte cache line each
+ * An entry is two longs. The data and the Zobrist key XORed with the data:
+ *   data b[0:23] -> best move [MovePicker.NO_MOVE if none]
+ *   data b[24:39] -> score, signed
+ *   data b[40:47] -> depth
+ *   data b[48:49] -> bound [BOUND_EXACT, BOUND_LOWER or BOUND_UPPER, never zero in a used entry]
+ *   data b[50:55] -> generation of the search that stored it
+ * Threads share the table without locks. A torn or racing write leaves a key slot that no
+ *  ... longer XORs back to the probed key, so the probe just misses
+ * When storing, an entry of the same key is overwritten. Otherwise the entry that is shallowest
+ *  ... and oldest (in generations) is replaced
+ * One ByteBuffer holds at most 2 GB, so bigger tables span several chunks
+ */
+public class TranspositionTable {
+  public static final int BOUND_EXACT = 1;
+  public static final int BOUND_LOWER = 2;
+  public static final int BOUND_UPPER = 3;
+
+  private static final int ENTRY_BYTES = 2 * Long.BYTES;
+  private static final int BUCKET_ENTRIES = 4;
+  private static final int BUCKET_BYTES = ENTRY_BYTES * BUCKET_ENTRIES;
+  private static final int CHUNK_SHIFT = 30; // 1 GB chunks
+  private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  private static final int MOVE_MASK = 0xFFFFFF;
+  private static final int SCORE_SHIFT = 24;
+  private static final int DEPTH_SHIFT = 40;
+  private static final int BOUND_SHIFT = 48;
+  private static final int GENERATION_SHIFT = 50;
+  private static final int GENERATION_MASK = 0x3F;
+
+  private final ByteBuffer[] chunks;
+  private final long bucketMask;
+  private volatile int generation;
+
+  public TranspositionTable(int sizeMB) {
+    if (sizeMB < 1) throw new IllegalArgumentException("Table size must be at least 1 MB");
+    long buckets = Long.highestOneBit((long) sizeMB * 1024 * 1024 / BUCKET_BYTES);
+    long bytes = buckets * BUCKET_BYTES;
+    chunks = new ByteBuffer[(int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT)];
+    for (int i = 0; i < chunks.length; ++i) {
+      long chunkBytes = Math.min(bytes - ((long) i << CHUNK_SHIFT), 1L << CHUNK_SHIFT);
+      chunks[i] = ByteBuffer.allocateDirect((int) chunkBytes).order(ByteOrder.nativeOrder());
+    }
+    bucketMask = buckets - 1;
+  }
+
+  public long getBucketCount() { return bucketMask + 1; }
+
+  // Ages every entry by one generation. Call once per search
+  public void newSearch() { generation = (generation + 1) & GENERATION_MASK; }
+
+  public void clear() {
+    for (final ByteBuffer chunk : chunks) {
+      for (int i = 0; i < chunk.capacity(); i += Long.BYTES) chunk.putLong(i, 0L);
+    }
+    generation = 0;
+  }
+
+  private long bucketOffset(long key) { return (key & bucketMask) * BUCKET_BYTES; }
+  private ByteBuffer chunkOf(long offset) { return chunks[(int) (offset >>> CHUNK_SHIFT)]; }
+
+  // Returns the data of [key] or 0 if the position is not in the table
+  public long probe(long key) {
+    long offset = bucketOffset(key);
+    ByteBuffer chunk = chunkOf(offset);
+    int index = (int) (offset & CHUNK_MASK);
+    for (int i = 0; i < BUCKET_ENTRIES; ++i, index += ENTRY_BYTES) {
+      long data = chunk.getLong(index + Long.BYTES);
+      if ((chunk.getLong(index) ^ data) == key && data != 0L) return data;
+    }
+    return 0L;
+  }
+
+  public void store(long key, int move, int score, int depth, int bound) {
+    assert bound >= BOUND_EXACT && bound <= BOUND_UPPER;
+    long offset = bucketOffset(key);
+    ByteBuffer chunk = chunkOf(offset);
+    int base = (int) (offset & CHUNK_MASK);
+    int gen = generation;
+
+    int replace = base;
+    int worstWorth = Integer.MAX_VALUE;
+    for (int i = 0, index = base; i < BUCKET_ENTRIES; ++i, index += ENTRY_BYTES) {
+      long data = chunk.getLong(index + Long.BYTES);
+      if ((chunk.getLong(index) ^ data) == key || data == 0L) {
+        // Keep the old best move if the new search did not find one
+        if (move == 0 && data != 0L) move = move(data);
+        replace = index;
+        break;
+      }
+      // Older entries are worth less. Each generation of age costs as much as 4 plies of depth
+      int age = (gen - generation(data)) & GENERATION_MASK;
+      int worth = depth(data) - 4 * age;
+      if (worth < worstWorth) {
+        worstWorth = worth;
+        replace = index;
+      }
+    }
+
+    long data = (move & MOVE_MASK)
+      | ((long) (score & 0xFFFF) << SCORE_SHIFT)
+      | ((long) (depth & 0xFF) << DEPTH_SHIFT)
+      | ((long) bound << BOUND_SHIFT)
+      | ((long) gen << GENERATION_SHIFT);
+    chunk.putLong(replace, key ^ data);
+    chunk.putLong(replace + Long.BYTES, data);
+  }
+
+  public static int move(long data) { return (int) (data & MOVE_MASK); }
+  public static int score(long data) { return (short) (data >>> SCORE_SHIFT); }
+  public static int depth(long data) { return (int) (data >>> DEPTH_SHIFT) & 0xFF; }
+  public static int bound(long data) { return (int) (data >>> BOUND_SHIFT) & 0x3; }
+  public static int generation(long data) { return (int) (data >>> GENERATION_SHIFT) & GENERATION_MASK; }
+
+  // Permill of the first thousand buckets' entries stored by the current search
+  public int hashfull() {
+    int used = 0;
+    long buckets = Math.min(1000 / BUCKET_ENTRIES, bucketMask + 1);
+    for (long b = 0; b < buckets; ++b) {
+      long offset = b * BUCKET_BYTES;
+      ByteBuffer chunk = chunkOf(offset);
+      int index = (int) (offset & CHUNK_MASK);
+      for (int i = 0; i < BUCKET_ENTRIES; ++i, index += ENTRY_BYTES) {
+        long data = chunk.getLong(index + Long.BYTES);
+        if (data != 0L && generation(data) == generation) ++used;
+      }
+    }
+    return (int) (used * 1000 / (buckets * BUCKET_ENTRIES));
+  }
+}
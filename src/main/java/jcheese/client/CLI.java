@@ -8,11 +8,22 @@ public class CLI extends AbstractViewer implements IController {
   
   @Override
   public int getMove(ArrayList<Integer> legalMoves) {
-    int max = legalMoves.size();
-    
+    return legalMoves.get(selectIndex(legalMoves.size(), (i) -> legalMoves.get(i)));
+  }
+  
+  @Override
+  public int getMove(MoveList legalMoves) {
+    return legalMoves.get(selectIndex(legalMoves.size(), legalMoves::get));
+  }
+  
+  private interface IMoveAt {
+    int run(int index);
+  }
+  
+  private int selectIndex(int max, IMoveAt moveAt) {
     System.out.println("Select one move by entering the [index]");
     for (int i = 0; i < max; ++i) {
-      System.out.printf("[%d] -> %s\n", i, Move.getLAN(legalMoves.get(i)));
+      System.out.printf("[%d] -> %s\n", i, Move.getLAN(moveAt.run(i)));
     }
 
     int selected;
@@ -24,7 +35,7 @@ public class CLI extends AbstractViewer implements IController {
           System.out.printf("Index %d out of bounds", selected);
           continue; // Continue asking for input
         }
-        return legalMoves.get(selected);
+        return selected;
       } catch (InputMismatchException exc) {
         System.out.println("Index must be a number");
         // Continue asking for input
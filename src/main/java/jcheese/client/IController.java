@@ -1,9 +1,17 @@
 package jcheese.client;
 
 import java.util.ArrayList;
+import jcheese.MoveList;
 
 public interface IController {
   int getMove(ArrayList<Integer> legalMoves);
+  // Controllers that can read a MoveList directly should override this to skip the boxing
+  default int getMove(MoveList legalMoves) { return getMove(legalMoves.toArrayList()); }
+  // In timed games. The clock of the side to move runs and the Server interrupts the controller
+  //  ... when [remainingNanos] is spent. [incrementNanos] is added after every move
+  default int getMove(MoveList legalMoves, long remainingNanos, long incrementNanos) { return getMove(legalMoves); }
   void illegalMove(int move);
   void acceptedMove(int move);
+  // Every move applied to the game board, by either side, once applied
+  default void moveApplied(int move) {}
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package jcheese.client;
+
+/* [Design Note]
+ * A controller that thinks on the opponent's time
+ * After the controller's move is applied, the Server calls [startPondering] and the opponent is
+ *  ... asked for its move. The controller learns that move from [moveApplied], before its own
+ *  ... [getMove], and decides there whether the pondering was on the right move
+ * [startPondering] must return at once. The thinking happens on a thread of the controller
+ */
+public interface IPonderingController extends IController {
+  void startPondering();
+  // Stops any thinking in the background and returns once it has stopped. Called at the end of a game
+  void stopPondering();
+}
@@ -0,0 +1,49 @@
+package jcheese.server;
+
+import jcheese.Piece;
+
+/* [Design Note]
+ * The clocks of both sides, in nanoseconds measured with System.nanoTime
+ * At most one clock runs, the one of the side to move. [stop] charges it the time since [start]
+ *  ... and then adds the increment, unless the time has run out by then
+ * A side has lost on time once its remaining time is not positive
+ */
+public class GameClock {
+  private static final int NOT_RUNNING = -1;
+
+  private final long[] remaining = new long[Piece.SIDE_COUNT];
+  private final long incrementNanos;
+  private int runningSide = NOT_RUNNING;
+  private long startedAt;
+
+  public GameClock(long baseNanos, long incrementNanos) {
+    if (baseNanos <= 0) throw new IllegalArgumentException("Base time must be positive");
+    if (incrementNanos < 0) throw new IllegalArgumentException("Increment cannot be negative");
+    remaining[Piece.LIGHT] = baseNanos;
+    remaining[Piece.DARK] = baseNanos;
+    this.incrementNanos = incrementNanos;
+  }
+
+  public long getIncrementNanos() { return incrementNanos; }
+
+  // Counts the time running at this instant for the side to move
+  public long getRemainingNanos(int side) {
+    if (side != runningSide) return remaining[side];
+    return remaining[side] - (System.nanoTime() - startedAt);
+  }
+
+  public boolean isFlagged(int side) { return getRemainingNanos(side) <= 0; }
+
+  public void start(int side) {
+    if (runningSide != NOT_RUNNING) throw new IllegalStateException("A clock is already running");
+    runningSide = side;
+    startedAt = System.nanoTime();
+  }
+
+  public void stop() {
+    if (runningSide == NOT_RUNNING) throw new IllegalStateException("No clock is running");
+    remaining[runningSide] -= System.nanoTime() - startedAt;
+    if (remaining[runningSide] > 0) remaining[runningSide] += incrementNanos;
+    runningSide = NOT_RUNNING;
+  }
+}
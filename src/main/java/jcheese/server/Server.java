@@ -1,6 +1,12 @@
 package jcheese.server;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import jcheese.*;
 import jcheese.client.*;
 import jcheese.util.FEN;
@@ -15,13 +21,31 @@ public class Server {
   
   public final int END_50_RULE = 0;
   public final int END_STALEMATE = 1;
+  public final int END_REPETITION = 2;
   
   private final LinkedList<AbstractViewer> views = new LinkedList<>();
   private final IController[] controls = new IController[Piece.SIDE_COUNT];
   public final Board board = new Board();
   private final FEN fen = new FEN();
   private final MoveGenerator moveGen = new MoveGenerator();
-  // [TODO] implement timers
+  // Untimed games when the base time is zero
+  private long baseNanos;
+  private long incrementNanos;
+  private GameClock clock;
+  // Timed games ask for moves on this thread, so the Server can stop waiting when time runs out
+  // A controller may ignore the interrupt on a timeout and keep the thread. So each game gets a
+  //  ... new thread, and a timed out thread is abandoned
+  private ExecutorService controlThread;
+  
+  public Server setTimeControl(long baseMillis, long incrementMillis) {
+    if (baseMillis < 0 || incrementMillis < 0) throw new IllegalArgumentException("Times cannot be negative");
+    baseNanos = baseMillis * 1_000_000L;
+    incrementNanos = incrementMillis * 1_000_000L;
+    return this;
+  }
+  
+  // The clock of the game being played. Null in untimed games
+  public GameClock getClock() { return clock; }
   
   public Server setLightControl(IController control) {
     controls[Piece.LIGHT] = control;
@@ -45,8 +69,25 @@ public class Server {
     }
     
     fen.setFEN(Board.START_POS).load(board);
+    clock = baseNanos > 0 ? new GameClock(baseNanos, incrementNanos) : null;
     
-    ArrayList<Integer> legalMoves = new ArrayList<>();
+    try {
+      return play();
+    } finally {
+      abandonControlThread();
+      for (final IController control : controls) {
+        if (control instanceof IPonderingController) ((IPonderingController) control).stopPondering();
+      }
+    }
+  }
+  
+  private void abandonControlThread() {
+    if (controlThread != null) controlThread.shutdownNow();
+    controlThread = null;
+  }
+  
+  private int play() {
+    MoveList legalMoves = new MoveList();
     
     for (;;) {
               views.forEach((view) -> {
@@ -60,6 +101,13 @@ public class Server {
         return DRAW;
       }
       
+      if (board.getRepetitionCount() >= 2) {
+                views.forEach((view) -> {
+                    view.announceDraw(END_REPETITION);
+                  });
+        return DRAW;
+      }
+      
       int plySide = board.getPlySide();
       IController control = controls[plySide];
       
@@ -83,17 +131,62 @@ public class Server {
       }
       
       int chosenMove;
+      if (clock != null) clock.start(plySide);
       for (;;) {
-        chosenMove = control.getMove(legalMoves);
-        if (legalMoves.contains(chosenMove)) {
+        chosenMove = clock != null ? getTimedMove(control, legalMoves, plySide) : control.getMove(legalMoves);
+        if (clock != null && clock.isFlagged(plySide)) {
+          int winningSide = Piece.invertSide(plySide);
+                  views.forEach((view) -> {
+                      view.announceWin(END_TIMEOUT, winningSide);
+                  });
+          return winningSide;
+        }
+        if (moveGen.isLegal(board, chosenMove)) {
           control.acceptedMove(chosenMove);
           break;
         } else {
           control.illegalMove(chosenMove);
         }
       }
+      if (clock != null) clock.stop();
       
       board.applyMove(chosenMove);
+      IController opponent = controls[Piece.invertSide(plySide)];
+      control.moveApplied(chosenMove);
+      if (opponent != control) {
+        opponent.moveApplied(chosenMove);
+        // Think on the opponent's time. Not when playing both sides, there is no such time
+        if (control instanceof IPonderingController) ((IPonderingController) control).startPondering();
+      }
     } // Game loop
   }
-}
\ No newline at end of file
+  
+  // Waits for the move at most until the clock of [side] runs out, then interrupts the controller
+  // Returns [Move.ERROR_BIT] on a timeout
+  private int getTimedMove(IController control, MoveList legalMoves, int side) {
+    long remaining = clock.getRemainingNanos(side);
+    if (controlThread == null) {
+      controlThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "controller");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    Future<Integer> move = controlThread.submit(
+      () -> control.getMove(legalMoves, remaining, clock.getIncrementNanos()));
+    try {
+      return move.get(remaining, TimeUnit.NANOSECONDS);
+    } catch (TimeoutException exc) {
+      move.cancel(true);
+      abandonControlThread();
+      return Move.ERROR_BIT;
+    } catch (InterruptedException exc) {
+      move.cancel(true);
+      abandonControlThread();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a move", exc);
+    } catch (ExecutionException exc) {
+      throw new IllegalStateException("Controller failed", exc.getCause());
+    }
+  }
+}
@@ -799,21 +799,29 @@ public class BoardPane extends JLayeredPane {
   }
   public void setActions(ArrayList<Integer> moves, long checkers) {
     resetHints();
-    for (final int move : moves) {
-      int srcSquare = Move.getSrc(move);
-      int dstSquare = Move.getDst(move);
-      
-      if (Move.isCapture(move) || Move.isEnPassant(move)) {
-        captureHints[srcSquare] |= BitBoard.bit(dstSquare);
-      } else {
-        pushHints[srcSquare] |= BitBoard.bit(dstSquare);
-      }
-      
-      if (Move.isPromote(move)) {
-        promoteHints |= BitBoard.bit(dstSquare);
-      }
+    for (final int move : moves) addHints(move);
+    setCheckHints(checkers);
+  }
+  public void setActions(MoveList moves, long checkers) {
+    resetHints();
+    for (int i = 0; i < moves.size(); ++i) addHints(moves.get(i));
+    setCheckHints(checkers);
+  }
+  private void addHints(int move) {
+    int srcSquare = Move.getSrc(move);
+    int dstSquare = Move.getDst(move);
+    
+    if (Move.isCapture(move) || Move.isEnPassant(move)) {
+      captureHints[srcSquare] |= BitBoard.bit(dstSquare);
+    } else {
+      pushHints[srcSquare] |= BitBoard.bit(dstSquare);
     }
     
+    if (Move.isPromote(move)) {
+      promoteHints |= BitBoard.bit(dstSquare);
+    }
+  }
+  private void setCheckHints(long checkers) {
     if (BitBoard.notEmpty(checkers)) {
       checkHints = board.bitboards[Board.KINGS | board.getPlySide()] | checkers;
     }
@@ -0,0 +1,148 @@
+package jcheese.util;
+
+import jcheese.*;
+
+import static jcheese.util.MoveData.NORTH;
+import static jcheese.util.MoveData.EAST;
+import static jcheese.util.MoveData.SOUTH;
+import static jcheese.util.MoveData.WEST;
+
+/* [Design Note]
+ * Magic bitboards resolve the attack set of a slider with a single multiply-shift-lookup
+ * The relevant occupancy of a slider (its rays without the edge squares) is multiplied by
+ *  ... a magic number so that every blocker configuration maps to a unique index
+ * Every square owns a slice of the shared [rookTable] and [bishopTable], starting at its offset
+ * Queen attacks are the union of the rook and bishop attacks
+ * The masks and attack tables are derived from [MoveData.sliders] at class initialization
+ */
+public class Magic {
+  public static final long[] rookMasks = new long[Square.COUNT];
+  public static final long[] bishopMasks = new long[Square.COUNT];
+  public static final int[] rookShifts = new int[Square.COUNT];
+  public static final int[] bishopShifts = new int[Square.COUNT];
+  private static final int[] rookOffsets = new int[Square.COUNT];
+  private static final int[] bishopOffsets = new int[Square.COUNT];
+  private static final long[] rookTable;
+  private static final long[] bishopTable;
+  // The squares strictly between two squares sharing a ray. Empty if they do not share one
+  public static final long[][] betweens = new long[Square.COUNT][Square.COUNT];
+
+  public static final long[] rookMagics = new long[] {
+    0x1080004008801020L, 0x840092002C03000L, 0x1900200010400900L, 0x880100008000480L,
+    0x4200100420080200L, 0x8100020100080400L, 0x200040110886200L, 0x200008040220411L,
+    0x404800084400220L, 0x401000402000L, 0x86001081220440L, 0x408800800100280L,
+    0xA001201040820L, 0x8848800200840080L, 0x4001000100040200L, 0x442000102105084L,
+    0x9080010020804100L, 0x40404000201009L, 0x808010002009L, 0x2200090021D00100L,
+    0x8008008040080L, 0x4004002010040L, 0x11040008015042L, 0xA0001768104L,
+    0x800080204009L, 0x2010004140002001L, 0x9800200280100080L, 0x1000100080080080L,
+    0x442000A00049020L, 0x2100040080020080L, 0x800120400900148L, 0x10040A00128541L,
+    0x2800804000800030L, 0x1010002000400041L, 0x4000200011004100L, 0x610008410800800L,
+    0x400802402800800L, 0xC100020080800400L, 0x2000802000401L, 0x182085882000401L,
+    0x220204000808000L, 0x2860100040024022L, 0x1002004110040L, 0x99101042000A0020L,
+    0x4080004008080L, 0x10040002008080L, 0x2012004881020004L, 0x8300842444820011L,
+    0x88403882010200L, 0x820400080210100L, 0x110910040A00300L, 0x801100280080480L,
+    0x242009008200600L, 0x1002000489500200L, 0x40800200010080L, 0x91800041000080L,
+    0x209300488001L, 0x4C1002414824001L, 0x20020000B001041L, 0x7000100004200901L,
+    0x8002002004100802L, 0x30010002084C0007L, 0x888221800813004L, 0x4000002840840112L
+  };
+  public static final long[] bishopMagics = new long[] {
+    0xA010041108003100L, 0x6082020A002900L, 0x6810010619200000L, 0x8281A0520000408L,
+    0x1104001000400L, 0x18901008048400L, 0x40A0210245280L, 0x200210808A402L,
+    0x9140048410821200L, 0x800091010820041L, 0x20504804832202C0L, 0x100091401081000L,
+    0x8021011140000012L, 0x810020804450400L, 0x208B0542109008A2L, 0x80084A08040204L,
+    0x40E2A80811244CL, 0x2505022008008108L, 0x430220100420040L, 0x10A040420220040L,
+    0x1105000290400000L, 0x93001200822120L, 0x4000A62048043004L, 0x280120048A015004L,
+    0x6090002A020814L, 0x44042000240800D0L, 0x1102800040A4400L, 0x1004080080220040L,
+    0x1001011004024L, 0x10044000805040L, 0x914041200820100L, 0x4821012821480L,
+    0x24040500C05021L, 0x88611002080200L, 0x116080A00040020L, 0x4000020080080080L,
+    0x2450450140840040L, 0x880201484100L, 0x222020404020092L, 0x8081110600002E00L,
+    0x2842101105000801L, 0x1100809008001025L, 0x20202221C0400L, 0x422014022009020L,
+    0x210046102100C00L, 0xC004008082029102L, 0xAA461801101200L, 0x404080080201108L,
+    0x20542108C205002L, 0x410544804100100L, 0x40910841100000L, 0x400200042021100L,
+    0x4204850400C0L, 0x200100410A42102L, 0x1040020801210102L, 0x805040410420000L,
+    0x2884804130100200L, 0x800C262201242000L, 0x1058000194108800L, 0x14221054420204L,
+    0x104000012A02200L, 0x200881003300100L, 0x140400202840100L, 0x402020801010201L
+  };
+
+  private static final long EDGE_FILES = MoveData.files[0] | MoveData.files[Square.FILE_COUNT - 1];
+  private static final long EDGE_RANKS = MoveData.ranks[0] | MoveData.ranks[Square.RANK_COUNT - 1];
+
+  static {
+    int rookSize = 0, bishopSize = 0;
+
+    for (int sq = 0; sq < Square.COUNT; ++sq) {
+      long[] rays = MoveData.sliders[sq];
+      // The edge square of a ray never blocks anything behind it. Drop it from the mask
+      rookMasks[sq] = rays[NORTH] & ~MoveData.ranks[Square.RANK_COUNT - 1]
+        | rays[EAST] & ~MoveData.files[Square.FILE_COUNT - 1]
+        | rays[SOUTH] & ~MoveData.ranks[0]
+        | rays[WEST] & ~MoveData.files[0];
+      bishopMasks[sq] = BitBoard.allClear();
+      for (int dir = MoveData.DIAGONAL; dir < MoveData.DIRECTION_COUNT; ++dir) {
+        bishopMasks[sq] |= rays[dir] & ~(EDGE_FILES | EDGE_RANKS);
+      }
+
+      rookShifts[sq] = Long.SIZE - BitBoard.popCount(rookMasks[sq]);
+      bishopShifts[sq] = Long.SIZE - BitBoard.popCount(bishopMasks[sq]);
+      rookOffsets[sq] = rookSize;
+      bishopOffsets[sq] = bishopSize;
+      rookSize += 1 << BitBoard.popCount(rookMasks[sq]);
+      bishopSize += 1 << BitBoard.popCount(bishopMasks[sq]);
+    }
+
+    rookTable = new long[rookSize];
+    bishopTable = new long[bishopSize];
+
+    for (int sq = 0; sq < Square.COUNT; ++sq) {
+      fillTable(sq, rookTable, rookOffsets[sq], rookMasks[sq], rookMagics[sq], rookShifts[sq],
+        MoveData.CARDINAL, MoveData.DIAGONAL);
+      fillTable(sq, bishopTable, bishopOffsets[sq], bishopMasks[sq], bishopMagics[sq], bishopShifts[sq],
+        MoveData.DIAGONAL, MoveData.DIRECTION_COUNT);
+
+      for (int dir = MoveData.CARDINAL; dir < MoveData.DIRECTION_COUNT; ++dir) {
+        for (long ray = MoveData.sliders[sq][dir]; BitBoard.notEmpty(ray); ray = BitBoard.popLSB(ray)) {
+          int other = BitBoard.bitScanForward(ray);
+          betweens[sq][other] = MoveData.sliders[sq][dir] & ~MoveData.sliders[other][dir] & ~BitBoard.bit(other);
+        }
+      }
+    }
+  }
+
+  private Magic() {} // Not instantiable
+
+  // Enumerates every subset of [mask] (Carry-Rippler) and stores the slow attack set of each
+  private static void fillTable(int sq, long[] table, int offset, long mask, long magic, int shift,
+                                int dirStart, int dirEnd) {
+    long occupancy = BitBoard.allClear();
+    do {
+      int index = offset + (int) ((occupancy * magic) >>> shift);
+      long attacks = slowAttacks(sq, occupancy, dirStart, dirEnd);
+      assert table[index] == BitBoard.allClear() || table[index] == attacks; // Magic must not collide
+      table[index] = attacks;
+      occupancy = (occupancy - mask) & mask;
+    } while (BitBoard.notEmpty(occupancy));
+  }
+
+  private static long slowAttacks(int sq, long occupancy, int dirStart, int dirEnd) {
+    long extent = BitBoard.allClear();
+    for (int dir = dirStart; dir < dirEnd; ++dir) {
+      long ray = MoveData.sliders[sq][dir];
+      long blockers = ray & occupancy;
+      if (BitBoard.notEmpty(blockers)) {
+        ray &= ~MoveData.sliders[MoveData.scanners[dir].run(blockers)][dir];
+      }
+      extent |= ray;
+    }
+    return extent;
+  }
+
+  public static long rookAttacks(int sq, long occupancy) {
+    return rookTable[rookOffsets[sq] + (int) (((occupancy & rookMasks[sq]) * rookMagics[sq]) >>> rookShifts[sq])];
+  }
+  public static long bishopAttacks(int sq, long occupancy) {
+    return bishopTable[bishopOffsets[sq] + (int) (((occupancy & bishopMasks[sq]) * bishopMagics[sq]) >>> bishopShifts[sq])];
+  }
+  public static long queenAttacks(int sq, long occupancy) {
+    return rookAttacks(sq, occupancy) | bishopAttacks(sq, occupancy);
+  }
+}
@@ -750,5 +750,11 @@ public class MoveData {
     // En passant ranks.
     enPassantRanks[Piece.LIGHT] = ranks[4];
     enPassantRanks[Piece.DARK] = ranks[3];
+    // Pawn captures from the back ranks. No pawn stands there, but looking up the pawns
+    // ... that attack a back rank square goes through these entries of the other side.
+    for (int file = 0; file < Square.FILE_COUNT; ++file) {
+      pawnCaptures[Square.fromCoords(file, 0)][Piece.LIGHT] = pawnCaptures[Square.fromCoords(file, 1)][Piece.LIGHT] >>> 8;
+      pawnCaptures[Square.fromCoords(file, 7)][Piece.DARK] = pawnCaptures[Square.fromCoords(file, 6)][Piece.DARK] << 8;
+    }
   }
 }